@@ -93,7 +93,7 @@ public class BuildMonitor implements Refreshable {
                 eb.setColor(outputChannel.getGuild().getMember(HifumiBot.getSelf().getJDA().getSelfUser()).getColor());
                 
                 if (outputChannel != null) {
-                    outputChannel.sendMessage(eb.build()).complete();
+                    HifumiBot.getSelf().sendMessageAsync(outputChannel, eb.build());
                 }
             }
         } catch (IOException e) {
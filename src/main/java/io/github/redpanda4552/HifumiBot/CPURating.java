@@ -0,0 +1,55 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot;
+
+/**
+ * How well a CPU with a given Single Thread Rating runs PCSX2, best first.
+ */
+public enum CPURating implements HardwareCatalog.Tier {
+    OVERKILL("Overkill", 2800),
+    GREAT("Great for most", 2400),
+    GOOD("Good for most", 2000),
+    MINIMUM_3D("Okay for some 3D", 1600),
+    MINIMUM_2D("Okay for some 2D", 1200),
+    VERY_SLOW("Very Slow", 800),
+    AWFUL("Awful", 0);
+    
+    private String displayName;
+    private int minimum;
+    
+    private CPURating(String displayName, int minimum) {
+        this.displayName = displayName;
+        this.minimum = minimum;
+    }
+    
+    @Override
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    @Override
+    public int getMinimum() {
+        return minimum;
+    }
+}
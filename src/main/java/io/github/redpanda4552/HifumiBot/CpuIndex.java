@@ -24,8 +24,7 @@
 package io.github.redpanda4552.HifumiBot;
 
 import java.io.IOException;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -34,11 +33,16 @@ import org.jsoup.select.Elements;
 
 import io.github.redpanda4552.HifumiBot.util.Messaging;
 
+/**
+ * CPU single thread ratings scraped from Passmark. Each refresh builds a new
+ * catalog and publishes it in one step, so searches never lock and never see
+ * a partial list. If a scrape fails the previous catalog is kept.
+ */
 public class CpuIndex {
 
     public static final String PASSMARK_STR_URL = "https://www.cpubenchmark.net/singleThread.html";
     
-    private ConcurrentHashMap<String, String> cpuMap = new ConcurrentHashMap<String, String>();
+    private volatile HardwareCatalog catalog = new HardwareCatalog();
     
     public CpuIndex() {
         this.refresh();
@@ -48,38 +52,33 @@ public class CpuIndex {
         try {
             Document doc = Jsoup.connect(PASSMARK_STR_URL).maxBodySize(0).get();
             Elements charts = doc.getElementsByClass("chartlist");
+            HashMap<String, String> cpuMap = new HashMap<String, String>();
             
-            if (charts.size() > 0) {
-                this.clear();
+            for (Element chart : charts) {
+                Elements rows = chart.getElementsByTag("li");
                 
-                for (Element chart : charts) {
-                    Elements rows = chart.getElementsByTag("li");
+                for (Element row : rows) {
+                    Element cpuName = row.getElementsByClass("prdname").first();
+                    Element rating = row.getElementsByClass("count").first();
+                    
+                    // Not a CPU, or a layout we don't understand
+                    if (cpuName == null || rating == null)
+                        continue;
                     
-                    for (Element row : rows) {
-                        String cpuName = row.getElementsByClass("prdname").get(0).text();
-                        String rating = row.getElementsByClass("count").get(0).text();
-                        this.addCpu(cpuName, rating);
-                    }
+                    cpuMap.put(cpuName.text(), rating.text());
                 }
             }
+            
+            if (cpuMap.isEmpty())
+                throw new IOException("No CPUs found at " + PASSMARK_STR_URL);
+            
+            catalog = new HardwareCatalog(cpuMap, CPURating.values(), false);
         } catch (IOException e) {
             Messaging.sendErrorToSystemOutputChannel("CpuIndex", "refresh", e);
         }
     }
     
-    public synchronized void clear() {
-        cpuMap.clear();
-    }
-    
-    public synchronized void addCpu(String name, String rating) {
-        cpuMap.put(name, rating);
-    }
-    
-    public synchronized Set<String> getAllCpus() {
-        return cpuMap.keySet();
-    }
-    
-    public synchronized String getCpuRating(String name) {
-        return cpuMap.get(name);
+    public HardwareCatalog getCatalog() {
+        return catalog;
     }
 }
@@ -23,14 +23,20 @@
  */
 package io.github.redpanda4552.HifumiBot;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.github.redpanda4552.HifumiBot.command.commands.CommandWarez;
 import io.github.redpanda4552.HifumiBot.config.ConfigManager;
+import io.github.redpanda4552.HifumiBot.config.WarezUsers;
 import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.Messaging;
 import io.github.redpanda4552.HifumiBot.wiki.Emotes;
 import io.github.redpanda4552.HifumiBot.wiki.RegionSet;
 import io.github.redpanda4552.HifumiBot.wiki.WikiPage;
@@ -51,7 +57,7 @@ public class EventListener extends ListenerAdapter {
 //    private static final String BOT_TALK_CHANNEL_ID = "352232087736025090";
     
     private HifumiBot hifumiBot;
-    private HashMap<String, Message> messages = new HashMap<String, Message>();
+    private ConcurrentHashMap<String, Message> messages = new ConcurrentHashMap<String, Message>();
     
     public EventListener(HifumiBot hifumiBot) {
         this.hifumiBot = hifumiBot;
@@ -59,10 +65,21 @@ public class EventListener extends ListenerAdapter {
     
     @Override
     public void onGuildMemberRoleAdd(GuildMemberRoleAddEvent event) {
+        long now = Instant.now().getEpochSecond();
+        
         for (Role role : event.getRoles()) {
-            if (role.getId().equals(CommandWarez.WAREZ_ROLE_ID) && !HifumiBot.getSelf().getConfig().warezUsers.containsKey(event.getUser().getId())) {
-                HifumiBot.getSelf().getConfig().warezUsers.put(event.getUser().getId(), OffsetDateTime.now());
-                ConfigManager.write(HifumiBot.getSelf().getConfig());
+            if (role.getId().equals(CommandWarez.WAREZ_ROLE_ID) && HifumiBot.getSelf().getConfig().warezUsers.putIfAbsent(event.getUser().getIdLong(), now)) {
+                try {
+                    if (HifumiBot.getSelf().getWarezJournal() != null)
+                        HifumiBot.getSelf().getWarezJournal().add(event.getUser().getIdLong(), now);
+                    else if (HifumiBot.getSelf().getDatabase() != null)
+                        HifumiBot.getSelf().getDatabase().putWarezUser(event.getUser().getIdLong(), now);
+                    else
+                        ConfigManager.markDirty(HifumiBot.getSelf().getConfig());
+                } catch (IOException | SQLException e) {
+                    Messaging.sendErrorToSystemOutputChannel("EventListener", "onGuildMemberRoleAdd", e);
+                }
+                
                 return;
             }
         }
@@ -72,8 +89,19 @@ public class EventListener extends ListenerAdapter {
     public void onGuildMemberRoleRemove(GuildMemberRoleRemoveEvent event) {
         for (Role role : event.getRoles()) {
             if (role.getId().equals(CommandWarez.WAREZ_ROLE_ID)) {
-                HifumiBot.getSelf().getConfig().warezUsers.remove(event.getUser().getId());
-                ConfigManager.write(HifumiBot.getSelf().getConfig());
+                HifumiBot.getSelf().getConfig().warezUsers.remove(event.getUser().getIdLong());
+                
+                try {
+                    if (HifumiBot.getSelf().getWarezJournal() != null)
+                        HifumiBot.getSelf().getWarezJournal().remove(event.getUser().getIdLong());
+                    else if (HifumiBot.getSelf().getDatabase() != null)
+                        HifumiBot.getSelf().getDatabase().removeWarezUser(event.getUser().getIdLong());
+                    else
+                        ConfigManager.markDirty(HifumiBot.getSelf().getConfig());
+                } catch (IOException | SQLException e) {
+                    Messaging.sendErrorToSystemOutputChannel("EventListener", "onGuildMemberRoleRemove", e);
+                }
+                
                 return;
             }
         }
@@ -81,7 +109,9 @@ public class EventListener extends ListenerAdapter {
     
     @Override
     public void onGuildMemberJoin(GuildMemberJoinEvent event) {
-        if (HifumiBot.getSelf().getConfig().warezUsers.containsKey(event.getUser().getId())) {
+        long warezTime = HifumiBot.getSelf().getConfig().warezUsers.get(event.getUser().getIdLong());
+        
+        if (warezTime != WarezUsers.MISSING) {
             // First assign the warez role
             Role role = event.getGuild().getRoleById(CommandWarez.WAREZ_ROLE_ID);
             event.getGuild().addRoleToMember(event.getMember(), role).complete();
@@ -92,7 +122,7 @@ public class EventListener extends ListenerAdapter {
             eb.setDescription("A user who was previously warez'd has rejoined the server.");
             eb.addField("User Name", event.getUser().getName(), true);
             eb.addField("Display Name", event.getMember().getEffectiveName(), true);
-            String dateStr = HifumiBot.getSelf().getConfig().warezUsers.get(event.getUser().getId()).format(DateTimeFormatter.ofPattern("MMM dd yyyy HH:mm:ss")) + " UTC";
+            String dateStr = OffsetDateTime.ofInstant(Instant.ofEpochSecond(warezTime), ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("MMM dd yyyy HH:mm:ss")) + " UTC";
             eb.addField("Warez Date", dateStr, true);
             HifumiBot.getSelf().sendMessage(event.getGuild().getTextChannelById(HifumiBot.getSelf().getConfig().systemOutputChannelId), eb.build());
         }
@@ -145,20 +175,35 @@ public class EventListener extends ListenerAdapter {
     }
     
     public void waitForMessage(String userId, Message msg) {
-        if (messages.containsKey(userId))
-            messages.get(userId).delete().complete();
+        Message previous = messages.put(userId, msg);
         
-        messages.put(userId, msg);
+        if (previous != null)
+            previous.delete().queue();
     }
     
     public void finalizeMessage(Message msg, String gameName, String userId) {
-        WikiPage wikiPage = new WikiPage(hifumiBot.getWikiIndex().getWikiPageUrl(gameName));
-        
+        finalizeMessage(msg, hifumiBot.getWikiIndex().fetchPage(gameName), userId);
+    }
+    
+    /**
+     * @param wikiPage - The page to show, or null if it is no longer
+     * available
+     */
+    public void finalizeMessage(Message msg, WikiPage wikiPage, String userId) {
         if (msg.getChannel() instanceof TextChannel) {
-            msg.clearReactions().complete();
+            msg.clearReactions().queue();
         }
         
         EmbedBuilder eb = new EmbedBuilder();
+        
+        if (wikiPage == null) {
+            eb.setTitle("That page is no longer available! Try searching again.");
+            eb.setColor(0xff0000);
+            msg.editMessage(eb.build()).queue();
+            messages.remove(userId);
+            return;
+        }
+        
         eb.setTitle(wikiPage.getTitle(), wikiPage.getWikiPageUrl());
         eb.setThumbnail(wikiPage.getCoverArtUrl());
         
@@ -202,7 +247,7 @@ public class EventListener extends ListenerAdapter {
         if (!fixedList.toString().isEmpty())
             eb.addField("__Fixed Issues:__", fixedList.toString(), true);
         
-        msg.editMessage(eb.build()).complete();
+        msg.editMessage(eb.build()).queue();
         messages.remove(userId);
     }
 }
@@ -0,0 +1,57 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot;
+
+/**
+ * The internal resolution a GPU with a given Passmark score can handle,
+ * best first.
+ */
+public enum GPURating implements HardwareCatalog.Tier {
+    x8NATIVE("8x Native (~5K)", 13030),
+    x6NATIVE("6x Native (~4K)", 8660),
+    x5NATIVE("5x Native (~3K)", 6700),
+    x4NATIVE("4x Native (~2K)", 4890),
+    x3NATIVE("3x Native (~1080p)", 3230),
+    x2NATIVE("2x Native (~720p)", 1720),
+    NATIVE("Native", 360),
+    SLOW("Slow", 0);
+    
+    private String displayName;
+    private int minimum;
+    
+    private GPURating(String displayName, int minimum) {
+        this.displayName = displayName;
+        this.minimum = minimum;
+    }
+    
+    @Override
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    @Override
+    public int getMinimum() {
+        return minimum;
+    }
+}
@@ -25,8 +25,6 @@ package io.github.redpanda4552.HifumiBot;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -35,6 +33,12 @@ import org.jsoup.select.Elements;
 
 import io.github.redpanda4552.HifumiBot.util.Messaging;
 
+/**
+ * GPU scores scraped from Passmark's four GPU charts. Each refresh builds a
+ * new catalog and publishes it in one step, so searches never lock and never
+ * see a partial list. If any chart fails to scrape the previous catalog is
+ * kept, rather than publishing one with a chart missing.
+ */
 public class GpuIndex {
 
     public static final String PASSMARK_HIGH_END = "https://www.videocardbenchmark.net/high_end_gpus.html";
@@ -42,7 +46,7 @@ public class GpuIndex {
     public static final String PASSMARK_MID_LOW = "https://www.videocardbenchmark.net/midlow_range_gpus.html";
     public static final String PASSMARK_LOW_END = "https://www.videocardbenchmark.net/low_end_gpus.html";
     
-    private ConcurrentHashMap<String, String> gpuMap = new ConcurrentHashMap<String, String>();
+    private volatile HardwareCatalog catalog = new HardwareCatalog();
     
     public GpuIndex() {
         this.refresh();
@@ -54,53 +58,49 @@ public class GpuIndex {
             HashMap<String, String> midHigh = this.refresh(PASSMARK_MID_HIGH);
             HashMap<String, String> midLow = this.refresh(PASSMARK_MID_LOW);
             HashMap<String, String> lowEnd = this.refresh(PASSMARK_LOW_END);
-            this.clear();
+            HashMap<String, String> gpuMap = new HashMap<String, String>();
             gpuMap.putAll(highEnd);
             gpuMap.putAll(midHigh);
             gpuMap.putAll(midLow);
             gpuMap.putAll(lowEnd);
+            catalog = new HardwareCatalog(gpuMap, GPURating.values(), true);
         } catch (IOException e) {
-            e.printStackTrace();
+            Messaging.sendErrorToSystemOutputChannel("GpuIndex", "refresh", e);
         }
     }
     
     private HashMap<String, String> refresh(String url) throws IOException {
         HashMap<String, String> ret = new HashMap<String, String>();
+        Document doc = Jsoup.connect(url).maxBodySize(0).get();
+        Element mark = doc.getElementById("mark");
         
-        try {
-            Document doc = Jsoup.connect(url).maxBodySize(0).get();
-            Element mark = doc.getElementById("mark");
-            Elements charts = mark.getElementsByClass("chartlist");
+        if (mark == null)
+            throw new IOException("No GPU chart found at " + url);
+        
+        Elements charts = mark.getElementsByClass("chartlist");
+        
+        for (Element chart : charts) {
+            Elements rows = chart.getElementsByTag("li");
             
-            for (Element chart : charts) {
-                Elements rows = chart.getElementsByTag("li");
+            for (Element row : rows) {
+                Element gpuName = row.getElementsByClass("prdname").first();
+                Element rating = row.getElementsByClass("count").first();
                 
-                for (Element row : rows) {
-                    String gpuName = row.getElementsByClass("prdname").get(0).text();
-                    String rating = row.getElementsByClass("count").get(0).text();
-                    ret.put(gpuName, rating);
-                }
+                // Not a GPU, or a layout we don't understand
+                if (gpuName == null || rating == null)
+                    continue;
+                
+                ret.put(gpuName.text(), rating.text());
             }
-        } catch (IOException e) {
-            Messaging.sendErrorToSystemOutputChannel("GpuIndex", "refresh", e);
         }
         
+        if (ret.isEmpty())
+            throw new IOException("No GPUs found at " + url);
+        
         return ret;
     }
     
-    public synchronized void clear() {
-        gpuMap.clear();
-    }
-    
-    public synchronized void addGpu(String name, String rating) {
-        gpuMap.put(name, rating);
-    }
-    
-    public synchronized Set<String> getAllGpus() {
-        return gpuMap.keySet();
-    }
-    
-    public synchronized String getGpuRating(String name) {
-        return gpuMap.get(name);
+    public HardwareCatalog getCatalog() {
+        return catalog;
     }
 }
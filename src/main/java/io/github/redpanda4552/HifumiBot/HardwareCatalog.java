@@ -0,0 +1,288 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.redpanda4552.HifumiBot.util.TopK;
+
+/**
+ * An immutable, searchable list of hardware and their Passmark scores. Each
+ * column is its own array, indexed by entry, and entries are sorted by score
+ * from best to worst. Ratings are parsed and matched to a tier once, when the
+ * catalog is built, so a search only has to compare names and rank them.
+ */
+public class HardwareCatalog {
+
+    /**
+     * A named score range, such as a {@link CPURating}.
+     */
+    public interface Tier {
+        String getDisplayName();
+        int getMinimum();
+    }
+    
+    /**
+     * One search result.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final int score;
+        private final Tier tier;
+        
+        private Entry(String name, int score, Tier tier) {
+            this.name = name;
+            this.score = score;
+            this.tier = tier;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * @return The Passmark score, or -1 if it could not be read.
+         */
+        public int getScore() {
+            return score;
+        }
+        
+        /**
+         * @return The tier's display name, or an empty String if no tier
+         * covers the score.
+         */
+        public String getTierName() {
+            return tier == null ? "" : tier.getDisplayName();
+        }
+    }
+    
+    private final String[] names;
+    private final String[] normalized;
+    private final int[] scores;
+    private final Tier[] tiers;
+    // Whole word to the entries it is a word of, once per time it appears
+    private final HashMap<String, int[]> wordIndex;
+    // Each distinct space separated piece of the normalized names, and the
+    // entries it is a piece of. A query word without a space is contained in
+    // a name exactly when it is contained in one of the name's pieces.
+    private final String[] pieces;
+    private final int[][] pieceIndex;
+    
+    /**
+     * @param ratings - Hardware name to rating, as scraped from Passmark
+     * @param tierList - Tiers from the highest minimum to the lowest
+     * @param foldWordCase - Whether names are lower cased before being split
+     * into the words a query is matched against. The CPU search has always
+     * matched words case sensitively, so that is kept.
+     */
+    public HardwareCatalog(Map<String, String> ratings, Tier[] tierList, boolean foldWordCase) {
+        int size = ratings.size();
+        String[] rawNames = new String[size];
+        int[] rawScores = new int[size];
+        int i = 0;
+        
+        for (Map.Entry<String, String> rating : ratings.entrySet()) {
+            rawNames[i] = rating.getKey();
+            
+            try {
+                rawScores[i] = Integer.parseInt(rating.getValue().replaceAll("[,. ]", ""));
+            } catch (NumberFormatException e) {
+                System.out.println("Unreadable rating \"" + rating.getValue() + "\" for " + rating.getKey());
+                rawScores[i] = -1;
+            }
+            
+            i++;
+        }
+        
+        // Best first, then by name so that the order does not depend on the map
+        Integer[] order = new Integer[size];
+        
+        for (i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        
+        Arrays.sort(order, (a, b) -> rawScores[a] != rawScores[b] ? Integer.compare(rawScores[b], rawScores[a]) : rawNames[a].compareTo(rawNames[b]));
+        names = new String[size];
+        normalized = new String[size];
+        scores = new int[size];
+        tiers = new Tier[size];
+        HashMap<String, ArrayList<Integer>> words = new HashMap<String, ArrayList<Integer>>();
+        LinkedHashMap<String, ArrayList<Integer>> pieceEntries = new LinkedHashMap<String, ArrayList<Integer>>();
+        
+        for (i = 0; i < size; i++) {
+            String name = rawNames[order[i]];
+            names[i] = name.intern();
+            normalized[i] = name.toLowerCase().trim();
+            scores[i] = rawScores[order[i]];
+            
+            for (Tier tier : tierList) {
+                if (scores[i] >= tier.getMinimum()) {
+                    tiers[i] = tier;
+                    break;
+                }
+            }
+            
+            for (String word : (foldWordCase ? normalized[i] : name).replace("-", " ").split(" ")) {
+                words.computeIfAbsent(word, k -> new ArrayList<Integer>()).add(i);
+            }
+            
+            for (String piece : normalized[i].split(" ")) {
+                ArrayList<Integer> entries = pieceEntries.computeIfAbsent(piece, k -> new ArrayList<Integer>());
+                
+                // Contains only counts once per name
+                if (entries.isEmpty() || entries.get(entries.size() - 1) != i) {
+                    entries.add(i);
+                }
+            }
+        }
+        
+        wordIndex = new HashMap<String, int[]>();
+        
+        for (Map.Entry<String, ArrayList<Integer>> word : words.entrySet()) {
+            wordIndex.put(word.getKey(), toArray(word.getValue()));
+        }
+        
+        pieces = pieceEntries.keySet().toArray(new String[pieceEntries.size()]);
+        pieceIndex = new int[pieces.length][];
+        
+        for (i = 0; i < pieces.length; i++) {
+            pieceIndex[i] = toArray(pieceEntries.get(pieces[i]));
+        }
+    }
+    
+    /**
+     * An empty catalog, for before the first scrape.
+     */
+    public HardwareCatalog() {
+        names = normalized = pieces = new String[0];
+        scores = new int[0];
+        tiers = new Tier[0];
+        wordIndex = new HashMap<String, int[]>();
+        pieceIndex = new int[0][];
+    }
+    
+    public int size() {
+        return names.length;
+    }
+    
+    /**
+     * Rank entries against a query. Each query word that appears anywhere in
+     * a name is worth half a point, plus a point for each whole word of the
+     * name it equals. Only entries that match at least one query word are
+     * looked at.
+     * @param args - The query, one word per element
+     * @param limit - The most results to return
+     * @return Matching entries, best match first. Equal matches are in
+     * catalog order.
+     */
+    public List<Entry> search(String[] args, int limit) {
+        float[] weights = new float[names.length];
+        // Entries that have matched anything, in the order they first matched
+        int[] matched = new int[names.length];
+        int matchedCount = 0;
+        // Per entry, one more than the last query word it was found to contain
+        int[] contained = new int[names.length];
+        
+        for (int a = 0; a < args.length; a++) {
+            String arg = args[a].toLowerCase().trim();
+            
+            // Whole word match
+            int[] entries = wordIndex.get(arg);
+            
+            if (entries != null) {
+                for (int i : entries) {
+                    if (weights[i] == 0) {
+                        matched[matchedCount++] = i;
+                    }
+                    
+                    weights[i] += 1;
+                }
+            }
+            
+            // Contains. A quoted query word may have a space in it, and an
+            // empty one is in everything, so neither can use the pieces.
+            if (arg.isEmpty() || arg.indexOf(' ') != -1) {
+                for (int i = 0; i < names.length; i++) {
+                    if (normalized[i].contains(arg)) {
+                        if (weights[i] == 0) {
+                            matched[matchedCount++] = i;
+                        }
+                        
+                        weights[i] += 0.5;
+                    }
+                }
+            } else {
+                for (int p = 0; p < pieces.length; p++) {
+                    if (!pieces[p].contains(arg)) {
+                        continue;
+                    }
+                    
+                    for (int i : pieceIndex[p]) {
+                        if (contained[i] == a + 1) {
+                            continue;
+                        }
+                        
+                        contained[i] = a + 1;
+                        
+                        if (weights[i] == 0) {
+                            matched[matchedCount++] = i;
+                        }
+                        
+                        weights[i] += 0.5;
+                    }
+                }
+            }
+        }
+        
+        TopK topK = new TopK(limit);
+        
+        for (int m = 0; m < matchedCount; m++) {
+            topK.offer(matched[m], weights[matched[m]]);
+        }
+        
+        ArrayList<Entry> ret = new ArrayList<Entry>();
+        
+        for (int i : topK.drain()) {
+            ret.add(new Entry(names[i], scores[i], tiers[i]));
+        }
+        
+        return ret;
+    }
+    
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] ret = new int[list.size()];
+        
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = list.get(i);
+        }
+        
+        return ret;
+    }
+}
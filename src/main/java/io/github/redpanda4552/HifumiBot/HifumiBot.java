@@ -23,12 +23,25 @@
  */
 package io.github.redpanda4552.HifumiBot;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import javax.security.auth.login.LoginException;
 
+import io.github.redpanda4552.HifumiBot.command.CommandExecutor;
 import io.github.redpanda4552.HifumiBot.command.CommandIndex;
 import io.github.redpanda4552.HifumiBot.command.CommandInterpreter;
+import io.github.redpanda4552.HifumiBot.command.CommandMetrics;
+import io.github.redpanda4552.HifumiBot.command.RateLimiter;
 import io.github.redpanda4552.HifumiBot.config.Config;
 import io.github.redpanda4552.HifumiBot.config.ConfigManager;
+import io.github.redpanda4552.HifumiBot.config.ConfigWatcher;
+import io.github.redpanda4552.HifumiBot.config.WarezUsers;
+import io.github.redpanda4552.HifumiBot.database.Database;
+import io.github.redpanda4552.HifumiBot.database.WarezJournal;
+import io.github.redpanda4552.HifumiBot.util.Messaging;
 import io.github.redpanda4552.HifumiBot.wiki.WikiIndex;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
@@ -38,6 +51,7 @@ import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
 
 public class HifumiBot {
@@ -76,6 +90,9 @@ public class HifumiBot {
     
     private JDA jda;
     private Config config;
+    private Database database;
+    private WarezJournal warezJournal;
+    private ConfigWatcher configWatcher;
     
     private Scheduler scheduler;
     private WikiIndex wikiIndex;
@@ -83,6 +100,9 @@ public class HifumiBot {
     private GpuIndex gpuIndex;
     private BuildMonitor buildMonitor;
     private CommandIndex commandIndex;
+    private CommandExecutor commandExecutor;
+    private RateLimiter rateLimiter;
+    private CommandMetrics commandMetrics;
     private PermissionManager permissionManager;
     private CommandInterpreter commandInterpreter;
     private EventListener eventListener;
@@ -113,9 +133,44 @@ public class HifumiBot {
         updateStatus("Starting...");
         ConfigManager.createConfigIfNotExists();
         config = ConfigManager.read();
+        String configDigest = ConfigManager.getFileDigest();
+        
+        try {
+            database = new Database();
+            
+            if (!database.migrate(config))
+                importConfigEdits(configDigest);
+            
+            // The database is the authority from here on, the JSON config is only a copy
+            config.warezUsers = database.getWarezUsers();
+            config.dynamicCommands = database.getDynamicCommands();
+        } catch (SQLException e) {
+            System.out.println("Failed to open database! Falling back to the JSON config only!");
+            e.printStackTrace();
+            
+            if (database != null) {
+                database.close();
+                database = null;
+            }
+        }
+        
+        try {
+            warezJournal = new WarezJournal();
+            warezJournal.replay(config.warezUsers);
+        } catch (IOException e) {
+            System.out.println("Failed to open warez journal! Warez changes will be saved directly!");
+            e.printStackTrace();
+            
+            if (warezJournal != null) {
+                warezJournal.close();
+                warezJournal = null;
+            }
+        }
+        
         // Write back the config so that if any new fields were added after an
         // update, they are written to disk
         ConfigManager.write(config);
+        recordConfigDigest();
         scheduler = new Scheduler();
         wikiIndex = new WikiIndex();
         cpuIndex = new CpuIndex();
@@ -123,9 +178,19 @@ public class HifumiBot {
         buildMonitor = new BuildMonitor(jda.getTextChannelById(outputChannelId));
         commandIndex = new CommandIndex();
         permissionManager = new PermissionManager(superuserId);
+        commandExecutor = new CommandExecutor(config);
+        rateLimiter = new RateLimiter(config);
+        commandMetrics = new CommandMetrics(config.statsWindowSeconds);
         jda.addEventListener(commandInterpreter = new CommandInterpreter(this));
         jda.addEventListener(eventListener = new EventListener(this));
         
+        try {
+            configWatcher = new ConfigWatcher();
+        } catch (IOException e) {
+            System.out.println("Failed to watch config files! Edits will need a reload!");
+            e.printStackTrace();
+        }
+        
         // Schedule repeating tasks
         scheduler.scheduleRepeating("wiki", () -> {
             HifumiBot.getSelf().getWikiIndex().refresh();
@@ -143,6 +208,23 @@ public class HifumiBot {
             HifumiBot.getSelf().getBuildMonitor().refresh();
         }, 1000 * 60 * 10);
         
+        if (warezJournal != null) {
+            scheduler.scheduleRepeating("warez", () -> {
+                // Looked up each run rather than captured, so a task that
+                // outlives a reload never touches a closed journal
+                HifumiBot hifumiBot = HifumiBot.getSelf();
+                
+                if (hifumiBot.getWarezJournal() == null)
+                    return;
+                
+                try {
+                    hifumiBot.getWarezJournal().compactIfNeeded(hifumiBot.getConfig().warezUsers, hifumiBot::writeWarezSnapshot);
+                } catch (Exception e) {
+                    Messaging.sendErrorToSystemOutputChannel("HifumiBot", "compactWarezJournal", e);
+                }
+            }, 1000 * 60);
+        }
+        
         updateStatus(">help" + (debug ? " [Debug Mode]" : ""));
     }
     
@@ -150,6 +232,59 @@ public class HifumiBot {
         return config;
     }
     
+    public Database getDatabase() {
+        return database;
+    }
+    
+    public WarezJournal getWarezJournal() {
+        return warezJournal;
+    }
+    
+    /**
+     * Take up edits made to the JSON config's dynamic commands while the bot
+     * was down, as the config watcher would have had it been running. Warez
+     * users there may be behind the journal, so edits to them are ignored.
+     */
+    private void importConfigEdits(String configDigest) throws SQLException {
+        String recorded = database.getJsonDigest();
+        
+        // Nothing to compare against, or not edited since we last wrote it
+        if (recorded == null || configDigest == null || recorded.equals(configDigest))
+            return;
+        
+        database.replaceDynamicCommands(config.dynamicCommands);
+        // Also the case after a crash, when the file is at most a write delay
+        // ahead of the digest recorded on the last clean start or stop
+        System.out.println("Config was edited while stopped, imported " + config.dynamicCommands.size() + " dynamic commands from it. Warez users edited there are ignored, use the warez role instead.");
+    }
+    
+    /**
+     * Remember what the JSON config looked like when we last wrote or read
+     * it, so edits made while the bot is down can be told apart.
+     */
+    private void recordConfigDigest() {
+        String digest = ConfigManager.getLastDigest();
+        
+        if (database == null || digest == null)
+            return;
+        
+        try {
+            database.setJsonDigest(digest);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void writeWarezSnapshot(WarezUsers warezUsers) throws Exception {
+        if (database != null) {
+            database.replaceWarezUsers(warezUsers);
+            // The JSON copy is no longer written on every change, so catch it up here
+            ConfigManager.markDirty(config);
+        } else if (!ConfigManager.write(config)) {
+            throw new IOException("Failed to write config");
+        }
+    }
+    
     public Scheduler getScheduler() {
         return scheduler;
     }
@@ -182,6 +317,18 @@ public class HifumiBot {
         return jda;
     }
     
+    public CommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+    
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    
+    public CommandMetrics getCommandMetrics() {
+        return commandMetrics;
+    }
+    
     public PermissionManager getPermissionManager() {
         return permissionManager;
     }
@@ -198,17 +345,49 @@ public class HifumiBot {
         HifumiBot.getSelf().getJDA().getPresence().setActivity(Activity.watching("Shutting Down..."));
         jda.shutdown();
         
+        if (configWatcher != null)
+            configWatcher.close();
+        
+        // Stop compaction before the journal and database close under it
+        if (scheduler != null) {
+            scheduler.shutdown();
+            
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS))
+                System.out.println("Scheduled tasks still running at shutdown");
+        }
+        
+        if (commandExecutor != null) {
+            commandExecutor.shutdown();
+            
+            // Commands still running may yet mark the config dirty
+            if (!commandExecutor.awaitTermination(10, TimeUnit.SECONDS))
+                System.out.println("Commands still running at shutdown, their changes may not be saved");
+        }
+        
+        try {
+            ConfigManager.flush();
+            recordConfigDigest();
+        } finally {
+            try {
+                if (warezJournal != null)
+                    warezJournal.close();
+            } finally {
+                if (database != null)
+                    database.close();
+            }
+        }
+        
         if (reload)
             self = new HifumiBot();
     }
     
     public Message sendMessage(String channelId, MessageEmbed embed) {
         MessageChannel channel = this.getJDA().getTextChannelById(channelId);
-        return channel.sendMessage(embed).complete();
+        return complete(channel.sendMessage(embed));
     }
     
     public Message sendMessage(MessageChannel channel, MessageEmbed embed) {
-        return channel.sendMessage(embed).complete();
+        return complete(channel.sendMessage(embed));
     }
     
     public Message sendMessage(MessageChannel channel, String... strArr) {
@@ -222,6 +401,64 @@ public class HifumiBot {
     }
     
     public Message sendMessage(MessageChannel channel, Message msg) {
-        return channel.sendMessage(msg).complete();
+        return complete(channel.sendMessage(msg));
+    }
+    
+    private Message complete(MessageAction action) {
+        String command = CommandMetrics.getCurrentCommand();
+        long start = System.nanoTime();
+        Message msg = action.complete();
+        
+        if (command != null)
+            commandMetrics.recordSend(command, System.nanoTime() - start);
+        
+        return msg;
+    }
+    
+    /**
+     * Queue a message without waiting on Discord. The returned future
+     * completes with the sent message, or exceptionally if sending failed.
+     */
+    public CompletableFuture<Message> sendMessageAsync(String channelId, MessageEmbed embed) {
+        MessageChannel channel = this.getJDA().getTextChannelById(channelId);
+        
+        if (channel == null)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No text channel with id " + channelId));
+        
+        return sendMessageAsync(channel, embed);
+    }
+    
+    public CompletableFuture<Message> sendMessageAsync(MessageChannel channel, MessageEmbed embed) {
+        return queue(channel.sendMessage(embed));
+    }
+    
+    public CompletableFuture<Message> sendMessageAsync(MessageChannel channel, String... strArr) {
+        MessageBuilder mb = new MessageBuilder();
+        
+        for (String str : strArr) {
+            mb.append(str);
+        }
+        
+        return sendMessageAsync(channel, mb.build());
+    }
+    
+    public CompletableFuture<Message> sendMessageAsync(MessageChannel channel, Message msg) {
+        return queue(channel.sendMessage(msg));
+    }
+    
+    private CompletableFuture<Message> queue(MessageAction action) {
+        CompletableFuture<Message> future = new CompletableFuture<Message>();
+        String command = CommandMetrics.getCurrentCommand();
+        long start = System.nanoTime();
+        action.queue(msg -> {
+            if (command != null)
+                commandMetrics.recordSend(command, System.nanoTime() - start);
+            
+            future.complete(msg);
+        }, throwable -> {
+            throwable.printStackTrace();
+            future.completeExceptionally(throwable);
+        });
+        return future;
     }
 }
@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
@@ -35,16 +36,27 @@ import net.dv8tion.jda.api.entities.User;
 
 public class PermissionManager {
 
+    public static final String ADMINS_PATH = "./admins.txt";
+    
     private String superuserId;
-    private ArrayList<String> adminRoles = new ArrayList<String>();
+    // Replaced whole on reload, never modified, so it can be read without locking
+    private volatile List<String> adminRoles = new ArrayList<String>();
     
     public PermissionManager(String superuserId) {
         this.superuserId = superuserId;
         populateAdminRoles();
     }
     
+    /**
+     * Re-read admins.txt, swapping in the new admin roles all at once.
+     */
+    public boolean reload() {
+        return populateAdminRoles();
+    }
+    
     private boolean populateAdminRoles() {
-        File adminsFile = new File("./admins.txt");
+        File adminsFile = new File(ADMINS_PATH);
+        ArrayList<String> adminRoles = new ArrayList<String>();
         
         try {
             if (!adminsFile.exists() && !adminsFile.createNewFile()) {
@@ -64,6 +76,7 @@ public class PermissionManager {
             e.printStackTrace();
         }
         
+        this.adminRoles = adminRoles;
         return true;
     }
     
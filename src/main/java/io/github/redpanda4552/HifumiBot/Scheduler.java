@@ -67,6 +67,19 @@ public class Scheduler {
         threadPool.shutdown();
     }
     
+    /**
+     * Wait for tasks which were already running at shutdown to finish.
+     * @return False if some were still running after the timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        try {
+            return threadPool.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
     public Set<String> getRunnableNames() {
         return this.runnables.keySet();
     }
@@ -0,0 +1,268 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.command;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.redpanda4552.HifumiBot.HifumiBot;
+import io.github.redpanda4552.HifumiBot.command.commands.AbstractCommand;
+import io.github.redpanda4552.HifumiBot.config.Config;
+
+/**
+ * Runs commands off of the JDA gateway thread. Commands are queued into a
+ * bounded pool, and each command name may only have a limited number of
+ * invocations queued or running at once, so that one slow command cannot
+ * occupy every thread.
+ * <p>
+ * Admin commands get a lane of their own, with separate threads and a
+ * separate queue, so that moderation keeps working while searches have the
+ * main lane saturated. Callers must only dispatch admin commands invoked by
+ * someone with permission, as {@link CommandInterpreter} does, so nobody
+ * else can fill it.
+ * <p>
+ * When a lane is full, new commands are shed immediately rather than piling
+ * up, and the invoking message gets a {@link CommandExecutor#BUSY BUSY}
+ * reaction. Only one BUSY reaction is sent per channel in any few seconds,
+ * so a flood does not turn into as many outgoing requests. Commands which
+ * sat in the queue past the configured deadline are dropped before they run,
+ * since the answer would arrive too late to be useful.
+ */
+public class CommandExecutor {
+
+    public static final String BUSY = "\u23f3";
+    private static final long BUSY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long BUSY_SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    private ThreadPoolExecutor threadPool;
+    private ThreadPoolExecutor adminThreadPool;
+    private ConcurrentHashMap<String, AtomicInteger> inFlight;
+    private int concurrencyLimit;
+    private long queueDeadlineNanos;
+    private AtomicLong shed = new AtomicLong();
+    private AtomicLong expired = new AtomicLong();
+    // Channel id to when it last got a BUSY reaction
+    private ConcurrentHashMap<Long, Long> lastBusy = new ConcurrentHashMap<Long, Long>();
+    private AtomicLong lastBusySweep = new AtomicLong(System.nanoTime());
+    
+    public CommandExecutor(Config config) {
+        this.threadPool = newThreadPool(config.commandThreads, config.commandQueueCapacity, "hifumi-command-");
+        this.adminThreadPool = newThreadPool(config.adminCommandThreads, config.adminCommandQueueCapacity, "hifumi-admin-command-");
+        this.inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+        this.concurrencyLimit = config.commandConcurrencyLimit;
+        this.queueDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.commandQueueDeadlineMillis);
+    }
+    
+    private static ThreadPoolExecutor newThreadPool(int threads, int queueCapacity, String threadPrefix) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), newThreadFactory(threadPrefix));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    /**
+     * Queue a command for execution on its lane and return immediately.
+     * @return False if the command was shed, either because too many
+     * invocations of it are already in flight or because the queue is full.
+     */
+    public boolean dispatch(AbstractCommand command, CommandMeta cm) {
+        AtomicInteger count = inFlight.computeIfAbsent(command.getName(), k -> new AtomicInteger());
+        
+        if (count.incrementAndGet() > concurrencyLimit) {
+            count.decrementAndGet();
+            shed(cm);
+            return false;
+        }
+        
+        ThreadPoolExecutor lane = command.isAdminCommand() ? adminThreadPool : threadPool;
+        long enqueued = System.nanoTime();
+        
+        try {
+            lane.execute(() -> {
+                try {
+                    long waited = System.nanoTime() - enqueued;
+                    HifumiBot.getSelf().getCommandMetrics().recordQueueWait(command.getName(), waited);
+                    
+                    if (queueDeadlineNanos > 0 && waited > queueDeadlineNanos) {
+                        expired.incrementAndGet();
+                        busy(cm);
+                        return;
+                    }
+                    
+                    command.run(cm);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    count.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            count.decrementAndGet();
+            shed(cm);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private void shed(CommandMeta cm) {
+        shed.incrementAndGet();
+        busy(cm);
+    }
+    
+    /**
+     * Tell the user we are too busy, as cheaply as possible.
+     */
+    private void busy(CommandMeta cm) {
+        long now = System.nanoTime();
+        sweepBusyIfDue(now);
+        long channelId = cm.getChannel().getIdLong();
+        Long last = lastBusy.get(channelId);
+        
+        if (last != null && now - last < BUSY_WINDOW_NANOS)
+            return;
+        
+        // Whoever records the new time sends the reaction, so racing sheds
+        // in the same channel only send one
+        if (last == null ? lastBusy.putIfAbsent(channelId, now) != null : !lastBusy.replace(channelId, last, now))
+            return;
+        
+        cm.getMessage().addReaction(BUSY).queue();
+    }
+    
+    /**
+     * Forget channels whose window has passed, so that only channels busy in
+     * the last few seconds are kept.
+     */
+    private void sweepBusyIfDue(long now) {
+        long last = lastBusySweep.get();
+        
+        if (now - last > BUSY_SWEEP_INTERVAL_NANOS && lastBusySweep.compareAndSet(last, now))
+            lastBusy.values().removeIf(time -> now - time >= BUSY_WINDOW_NANOS);
+    }
+    
+    /**
+     * Number of commands waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return threadPool.getQueue().size();
+    }
+    
+    /**
+     * Number of commands currently running.
+     */
+    public int getActiveCount() {
+        return threadPool.getActiveCount();
+    }
+    
+    /**
+     * Number of admin commands waiting for a thread on the admin lane.
+     */
+    public int getAdminQueueDepth() {
+        return adminThreadPool.getQueue().size();
+    }
+    
+    /**
+     * Number of admin commands currently running.
+     */
+    public int getAdminActiveCount() {
+        return adminThreadPool.getActiveCount();
+    }
+    
+    /**
+     * Number of commands refused because a lane or a command's in-flight
+     * limit was full.
+     */
+    public long getShedCount() {
+        return shed.get();
+    }
+    
+    /**
+     * Number of commands dropped for waiting in the queue past the deadline.
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+    
+    /**
+     * Number of invocations of a command which are queued or running.
+     */
+    public int getInFlight(String name) {
+        AtomicInteger count = inFlight.get(name);
+        return count != null ? count.get() : 0;
+    }
+    
+    /**
+     * Stop accepting commands. Commands already queued will still run.
+     */
+    public void shutdown() {
+        threadPool.shutdown();
+        adminThreadPool.shutdown();
+    }
+    
+    /**
+     * Wait for commands queued or running at shutdown to finish, so that
+     * whatever they change is there to be saved.
+     * @return False if some were still running after the timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        
+        try {
+            return adminThreadPool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) && threadPool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Use virtual threads if this JDK has them, otherwise fall back to
+     * platform daemon threads. Looked up reflectively since we still build
+     * against Java 11.
+     */
+    private static ThreadFactory newThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // No virtual threads on this JDK
+        }
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -23,13 +23,19 @@
  */
 package io.github.redpanda4552.HifumiBot.command;
 
+import java.sql.SQLException;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.commands.AbstractCommand;
@@ -44,84 +50,226 @@ import io.github.redpanda4552.HifumiBot.command.commands.CommandReload;
 import io.github.redpanda4552.HifumiBot.command.commands.CommandRun;
 import io.github.redpanda4552.HifumiBot.command.commands.CommandCPU;
 import io.github.redpanda4552.HifumiBot.command.commands.CommandShutdown;
+import io.github.redpanda4552.HifumiBot.command.commands.CommandStats;
 import io.github.redpanda4552.HifumiBot.command.commands.CommandWarez;
 import io.github.redpanda4552.HifumiBot.command.commands.CommandWiki;
 import io.github.redpanda4552.HifumiBot.config.ConfigManager;
+import io.github.redpanda4552.HifumiBot.util.Messaging;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 
+/**
+ * Every command, along with the lookup structures and help pages derived
+ * from them. These are held in an immutable {@link Snapshot}; changes build
+ * a new snapshot off to the side and publish it in one step, so readers on
+ * the dispatch path never lock and never see a half built index.
+ * <p>
+ * Adding, updating or removing a single command only copies the path to it
+ * in the {@link CommandTrie}, and the command list of the categories it moved
+ * out of or into. Everything else is shared with the previous snapshot.
+ * <p>
+ * Help pages are rendered from the sorted command lists only when someone
+ * asks for them, and kept in a small LRU cache. A cached page remembers the
+ * list it was rendered from, so a page for a category which has since
+ * changed is never served.
+ */
 public class CommandIndex {
 
     private static final int COMMANDS_PER_PAGE = 10;
+    private static final int HELP_PAGE_CACHE_SIZE = 64;
     
-    private HashMap<String, AbstractCommand> commandMap;
-    private HashMap<String, ArrayList<MessageEmbed>> helpPages;
-    private MessageEmbed helpRoot;
+    private static class Snapshot {
+
+        private final CommandTrie commandTrie;
+        private final Map<String, List<AbstractCommand>> categories;
+        private final MessageEmbed helpRoot;
+        
+        private Snapshot(CommandTrie commandTrie, Map<String, List<AbstractCommand>> categories, MessageEmbed helpRoot) {
+            this.commandTrie = commandTrie;
+            this.categories = categories;
+            this.helpRoot = helpRoot;
+        }
+    }
+    
+    private static class HelpPage {
+
+        private final List<AbstractCommand> renderedFrom;
+        private final MessageEmbed embed;
+        
+        private HelpPage(List<AbstractCommand> renderedFrom, MessageEmbed embed) {
+            this.renderedFrom = renderedFrom;
+            this.embed = embed;
+        }
+    }
+    
+    private final List<AbstractCommand> builtins;
+    private final Comparator<AbstractCommand> byName;
+    private AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+    // Rendered help pages by category and page number, least recently used evicted first
+    private final Map<String, HelpPage> helpPageCache = new LinkedHashMap<String, HelpPage>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HelpPage> eldest) {
+            return size() > HELP_PAGE_CACHE_SIZE;
+        }
+    };
     
     /**
      * Create a new CommandIndex and invoke the {@link CommandIndex#rebuild rebuild()} method.
      */
     public CommandIndex() {
-        commandMap = new HashMap<String, AbstractCommand>();
+        ArrayList<AbstractCommand> builtins = new ArrayList<AbstractCommand>();
+        builtins.add(new CommandAbout());
+        builtins.add(new CommandCPU());
+        builtins.add(new CommandDev());
+        builtins.add(new CommandDX9());
+        builtins.add(new CommandDynCmd());
+        builtins.add(new CommandGPU());
+        builtins.add(new CommandHelp());
+        builtins.add(new CommandPFP());
+        builtins.add(new CommandReload());
+        builtins.add(new CommandRun());
+        builtins.add(new CommandShutdown());
+        builtins.add(new CommandStats());
+        builtins.add(new CommandWarez());
+        builtins.add(new CommandWiki());
+        this.builtins = Collections.unmodifiableList(builtins);
+        Collator collator = Collator.getInstance();
+        // Only ever used by writers, which are synchronized
+        this.byName = (a, b) -> collator.compare(a.getName(), b.getName());
         rebuild();
     }
     
     /**
      * Rebuild this CommandIndex from the Config object in HifumiBot.
      */
-    public void rebuild() {
-        commandMap.clear();
-        CommandAbout about = new CommandAbout();
-        commandMap.put(about.getName(), about);
-        CommandCPU cpu = new CommandCPU();
-        commandMap.put(cpu.getName(), cpu);
-        CommandDev dev = new CommandDev();
-        commandMap.put(dev.getName(), dev);
-        CommandDX9 dx9 = new CommandDX9();
-        commandMap.put(dx9.getName(), dx9);
-        CommandDynCmd dyncmd = new CommandDynCmd();
-        commandMap.put(dyncmd.getName(), dyncmd);
-        CommandGPU gpu = new CommandGPU();
-        commandMap.put(gpu.getName(), gpu);
-        CommandHelp help = new CommandHelp();
-        commandMap.put(help.getName(), help);
-        CommandPFP pfp = new CommandPFP();
-        commandMap.put(pfp.getName(), pfp);
-        CommandReload reload = new CommandReload();
-        commandMap.put(reload.getName(), reload);
-        CommandRun run = new CommandRun();
-        commandMap.put(run.getName(), run);
-        CommandShutdown shutdown = new CommandShutdown();
-        commandMap.put(shutdown.getName(), shutdown);
-        CommandWarez warez = new CommandWarez();
-        commandMap.put(warez.getName(), warez);
-        CommandWiki wiki = new CommandWiki();
-        commandMap.put(wiki.getName(), wiki);
-        
-        for (DynamicCommand dynamicCommand : HifumiBot.getSelf().getConfig().dynamicCommands) {
+    public synchronized void rebuild() {
+        HashMap<String, AbstractCommand> commandMap = new HashMap<String, AbstractCommand>();
+        
+        for (AbstractCommand builtin : builtins) {
+            commandMap.put(builtin.getName(), builtin);
+        }
+        
+        for (DynamicCommand dynamicCommand : HifumiBot.getSelf().getConfig().dynamicCommands.values()) {
             commandMap.put(dynamicCommand.getName(), dynamicCommand);
         }
         
-        rebuildHelpPages();
+        CommandTrie trie = CommandTrie.empty();
+        HashMap<String, List<AbstractCommand>> categories = new HashMap<String, List<AbstractCommand>>();
+        
+        for (AbstractCommand command : commandMap.values()) {
+            trie = trie.put(command.getName(), command);
+            categories.computeIfAbsent(command.getCategory(), k -> new ArrayList<AbstractCommand>()).add(command);
+        }
+        
+        for (String category : categories.keySet()) {
+            List<AbstractCommand> commands = categories.get(category);
+            commands.sort(byName);
+            categories.put(category, Collections.unmodifiableList(commands));
+        }
+        
+        snapshot.set(new Snapshot(trie, Collections.unmodifiableMap(categories), buildHelpRoot(categories.keySet())));
+        
+        synchronized (helpPageCache) {
+            helpPageCache.clear();
+        }
+    }
+    
+    /**
+     * Publish a snapshot with one command added, or replacing whichever
+     * command previously had its name.
+     */
+    private void put(AbstractCommand command) {
+        Snapshot current = snapshot.get();
+        AbstractCommand previous = current.commandTrie.get(command.getName());
+        HashMap<String, List<AbstractCommand>> categories = new HashMap<String, List<AbstractCommand>>(current.categories);
+        
+        if (previous != null)
+            removeFromCategory(categories, previous);
+        
+        String category = command.getCategory();
+        ArrayList<AbstractCommand> commands = new ArrayList<AbstractCommand>(categories.getOrDefault(category, Collections.emptyList()));
+        int index = Collections.binarySearch(commands, command, byName);
+        commands.add(index < 0 ? -index - 1 : index, command);
+        categories.put(category, Collections.unmodifiableList(commands));
+        evictHelpPages(category);
+        publish(current, current.commandTrie.put(command.getName(), command), categories);
+    }
+    
+    /**
+     * Publish a snapshot without the named command.
+     */
+    private void remove(String name) {
+        Snapshot current = snapshot.get();
+        AbstractCommand previous = current.commandTrie.get(name);
+        
+        if (previous == null)
+            return;
+        
+        HashMap<String, List<AbstractCommand>> categories = new HashMap<String, List<AbstractCommand>>(current.categories);
+        removeFromCategory(categories, previous);
+        publish(current, current.commandTrie.remove(name), categories);
+    }
+    
+    private void removeFromCategory(HashMap<String, List<AbstractCommand>> categories, AbstractCommand command) {
+        String category = command.getCategory();
+        ArrayList<AbstractCommand> commands = new ArrayList<AbstractCommand>(categories.get(category));
+        commands.remove(command);
+        
+        if (commands.isEmpty()) {
+            categories.remove(category);
+        } else {
+            categories.put(category, Collections.unmodifiableList(commands));
+        }
+        
+        evictHelpPages(category);
+    }
+    
+    private void publish(Snapshot previous, CommandTrie trie, HashMap<String, List<AbstractCommand>> categories) {
+        // The root page only lists categories, so keep it unless they changed
+        MessageEmbed helpRoot = categories.keySet().equals(previous.categories.keySet()) ? previous.helpRoot : buildHelpRoot(categories.keySet());
+        snapshot.set(new Snapshot(trie, Collections.unmodifiableMap(categories), helpRoot));
     }
     
     public Set<String> getAll() {
-        return commandMap.keySet();
+        HashSet<String> ret = new HashSet<String>();
+        
+        for (List<AbstractCommand> commands : snapshot.get().categories.values()) {
+            for (AbstractCommand command : commands) {
+                ret.add(command.getName());
+            }
+        }
+        
+        return ret;
     }
     
     public boolean isCommand(String name) {
-        return commandMap.get(name) != null;
+        return snapshot.get().commandTrie.get(name) != null;
     }
     
     public boolean isDynamicCommand(String name) {
-        AbstractCommand cmd = commandMap.get(name);
+        AbstractCommand cmd = snapshot.get().commandTrie.get(name);
         return cmd != null && cmd instanceof DynamicCommand;
     }
     
     public AbstractCommand getCommand(String name) {
-        return commandMap.get(name);
+        return snapshot.get().commandTrie.get(name);
     }
     
+    /**
+     * Resolve a command name from within message content without allocating.
+     * See {@link CommandTrie#find(String, int)}.
+     */
+    public AbstractCommand findCommand(String content, int start) {
+        return snapshot.get().commandTrie.find(content, start);
+    }
+    
+    /**
+     * Get a dynamic command. The returned command is live; to make changes,
+     * copy it with {@link DynamicCommand#DynamicCommand(DynamicCommand)},
+     * change the copy, and pass that to {@link CommandIndex#addCommand addCommand()}.
+     */
     public DynamicCommand getDynamicCommand(String name) {
         AbstractCommand cmd = getCommand(name);
         
@@ -134,126 +282,146 @@ public class CommandIndex {
         }
     }
     
-    public void addCommand(DynamicCommand dyncmd) {
-        // Insert it into the ArrayList in Config, then reload the CommandIndex.
-        ArrayList<DynamicCommand> configDynamicCommands = HifumiBot.getSelf().getConfig().dynamicCommands;
-        Iterator<DynamicCommand> iter = configDynamicCommands.iterator();
-        DynamicCommand configDynamicCommand = null;
-        boolean commandExists = false;
-        
-        while (iter.hasNext()) {
-            configDynamicCommand = iter.next();
-
-            if (configDynamicCommand.getName().equals(dyncmd.getName())) {
-                configDynamicCommand = dyncmd;
-                commandExists = true;
-            }
-        }
+    /**
+     * Add a dynamic command, or replace the dynamic command with the same
+     * name, and save it.
+     */
+    public synchronized void addCommand(DynamicCommand dyncmd) {
+        HifumiBot.getSelf().getConfig().dynamicCommands.put(dyncmd);
         
-        // If no command exists in the iterator, just add it
-        if (!commandExists) {
-            configDynamicCommands.add(dyncmd);
+        try {
+            if (HifumiBot.getSelf().getDatabase() != null)
+                HifumiBot.getSelf().getDatabase().putDynamicCommand(dyncmd);
+        } catch (SQLException e) {
+            Messaging.sendErrorToSystemOutputChannel("CommandIndex", "addCommand", e);
         }
         
-        ConfigManager.write(HifumiBot.getSelf().getConfig());
-        HifumiBot.getSelf().getCommandIndex().rebuild();
+        // Keep the JSON config in step, so it stays a readable copy
+        ConfigManager.markDirty(HifumiBot.getSelf().getConfig());
+        put(dyncmd);
     }
     
-    public void deleteCommand(String name) {
-        ArrayList<DynamicCommand> dynamicCommands = HifumiBot.getSelf().getConfig().dynamicCommands;
-        Iterator<DynamicCommand> iter = dynamicCommands.iterator();
-        DynamicCommand toDelete = null;
-        
-        while (iter.hasNext()) {
-            DynamicCommand dyncmd = iter.next();
-
-            if (dyncmd.getName().equals(name)) {
-                toDelete = dyncmd;
-                break;
+    public synchronized void deleteCommand(String name) {
+        if (HifumiBot.getSelf().getConfig().dynamicCommands.remove(name) != null) {
+            try {
+                if (HifumiBot.getSelf().getDatabase() != null)
+                    HifumiBot.getSelf().getDatabase().removeDynamicCommand(name);
+            } catch (SQLException e) {
+                Messaging.sendErrorToSystemOutputChannel("CommandIndex", "deleteCommand", e);
             }
-        }
-        
-        if (toDelete != null) {
-            dynamicCommands.remove(toDelete);
-            ConfigManager.write(HifumiBot.getSelf().getConfig());
-            HifumiBot.getSelf().getCommandIndex().rebuild();
+            
+            ConfigManager.markDirty(HifumiBot.getSelf().getConfig());
+            
+            if (isDynamicCommand(name))
+                remove(name);
         }
     }
     
     /**
      * Get a HashMap<String, TreeSet<String>> organizing commands by their
-     * categories. Currently only used to simplify help page generation. 
+     * categories. Currently only used to simplify help page generation.
      */
     public HashMap<String, TreeSet<String>> getCategorizedCommandNames() {
-        Set<String> commandNames = new HashSet<String>();
-        commandNames.addAll(getAll());
         HashMap<String, TreeSet<String>> ret = new HashMap<String, TreeSet<String>>();
+        Map<String, List<AbstractCommand>> categories = snapshot.get().categories;
         
-        for (String commandName : commandNames) {
-            AbstractCommand command = commandMap.get(commandName);
-            TreeSet<String> categoryCommands = null;
+        for (String category : categories.keySet()) {
+            TreeSet<String> categoryCommands = new TreeSet<String>(Collator.getInstance());
             
-            if (ret.containsKey(command.getCategory())) {
-                categoryCommands = ret.get(command.getCategory());
-            } else {
-                categoryCommands = new TreeSet<String>(Collator.getInstance());
+            for (AbstractCommand command : categories.get(category)) {
+                categoryCommands.add(command.getName());
             }
             
-            categoryCommands.add(commandName);
-            ret.put(command.getCategory(), categoryCommands);
+            ret.put(category, categoryCommands);
         }
         
         return ret;
     }
-
+    
+    /**
+     * @return The number of help pages in a category, or 0 if there is no
+     * such category.
+     */
+    public int getHelpPageCount(String category) {
+        List<AbstractCommand> commands = snapshot.get().categories.get(category);
+        return commands != null ? getPageCount(commands) : 0;
+    }
+    
     /**
-     * Fully rebuilds the help page lists.
+     * Get a help page, rendering it if it is not cached.
+     * @param pageNumber - Starting from 1. Clamped to the pages which exist.
+     * @return The page, or the help root page if there is no such category.
      */
-    private void rebuildHelpPages() {
-        helpPages = new HashMap<String, ArrayList<MessageEmbed>>();
-        HashMap<String, TreeSet<String>> commandMap = this.getCategorizedCommandNames();
-        
-        for (String category : commandMap.keySet()) {
-            int pageCount = (int) Math.ceil((double) commandMap.get(category).size() / COMMANDS_PER_PAGE);
-            helpPages.put(category, new ArrayList<MessageEmbed>());
-            EmbedBuilder eb = new EmbedBuilder();
+    public MessageEmbed getHelpPage(String category, int pageNumber) {
+        Snapshot current = snapshot.get();
+        List<AbstractCommand> commands = current.categories.get(category);
+        
+        if (commands == null)
+            return current.helpRoot;
+        
+        pageNumber = Math.max(1, Math.min(pageNumber, getPageCount(commands)));
+        String key = category + '\u0000' + pageNumber;
+        HelpPage page;
+        
+        synchronized (helpPageCache) {
+            page = helpPageCache.get(key);
+        }
+        
+        if (page == null || page.renderedFrom != commands) {
+            page = new HelpPage(commands, renderHelpPage(category, commands, pageNumber));
             
-            for (String command : commandMap.get(category)) {
-                eb.addField(">" + command, this.getCommand(command).getHelpText(), false);
-                
-                if (eb.getFields().size() >= COMMANDS_PER_PAGE) {
-                    addToPages(category, eb, pageCount);
-                    eb = new EmbedBuilder();
-                }
+            synchronized (helpPageCache) {
+                helpPageCache.put(key, page);
             }
-            
-            if (eb.getFields().size() > 0)
-                addToPages(category, eb, pageCount);
         }
         
+        return page.embed;
+    }
+    
+    private void evictHelpPages(String category) {
+        String prefix = category + '\u0000';
+        
+        synchronized (helpPageCache) {
+            helpPageCache.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+    
+    private static int getPageCount(List<AbstractCommand> commands) {
+        return (int) Math.ceil((double) commands.size() / COMMANDS_PER_PAGE);
+    }
+    
+    /**
+     * Render one help page of a category.
+     * @param commands - The category's commands, sorted by name
+     */
+    private static MessageEmbed renderHelpPage(String category, List<AbstractCommand> commands, int pageNumber) {
+        EmbedBuilder eb = new EmbedBuilder();
+        int end = Math.min(pageNumber * COMMANDS_PER_PAGE, commands.size());
+        
+        for (int i = (pageNumber - 1) * COMMANDS_PER_PAGE; i < end; i++) {
+            AbstractCommand command = commands.get(i);
+            eb.addField(">" + command.getName(), command.getHelpText(), false);
+        }
+        
+        eb.setTitle("HifumiBot Help - " + category + " - Page " + pageNumber + " / " + getPageCount(commands));
+        eb.setDescription("Use `" + CommandInterpreter.PREFIX + "help " + category + " [page]` to browse other pages.");
+        return eb.build();
+    }
+    
+    private static MessageEmbed buildHelpRoot(Set<String> categories) {
         EmbedBuilder helpRootBuilder = new EmbedBuilder();
         helpRootBuilder.setTitle("HifumiBot Help");
         helpRootBuilder.setDescription("The prefix for all commands is \"" + CommandInterpreter.PREFIX + "\".\nTo view available commands use `" + CommandInterpreter.PREFIX + "help <category> [page]`");
         StringBuilder sb = new StringBuilder();
         
-        for (String category : commandMap.keySet())
+        for (String category : categories)
             sb.append(category).append("\n");
         
         helpRootBuilder.addField("Available Categories", sb.toString(), false);
-        helpRoot = helpRootBuilder.build();
-    }
-    
-    private void addToPages(String category, EmbedBuilder eb, int pageCount) {
-        eb.setTitle("HifumiBot Help - " + category + " - Page " + (helpPages.get(category).size() + 1) + " / " + pageCount);
-        eb.setDescription("Use `" + CommandInterpreter.PREFIX + "help " + category + " [page]` to browse other pages.");
-        helpPages.get(category).add(eb.build());
-    }
-    
-    public HashMap<String, ArrayList<MessageEmbed>> getHelpPages() {
-        return helpPages;
+        return helpRootBuilder.build();
     }
     
     public MessageEmbed getHelpRootPage() {
-        return helpRoot;
+        return snapshot.get().helpRoot;
     }
 }
@@ -23,14 +23,9 @@
  */
 package io.github.redpanda4552.HifumiBot.command;
 
-import java.util.Collections;
-
-import org.apache.commons.lang3.ArrayUtils;
-
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.commands.AbstractCommand;
 import net.dv8tion.jda.api.entities.Message;
-import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
@@ -50,34 +45,33 @@ public class CommandInterpreter extends ListenerAdapter {
     
     @Override
     public void onMessageReceived(MessageReceivedEvent event) {
-        if (event.getAuthor().getId().equals(hifumiBot.getJDA().getSelfUser().getId()))
-            return;
-        
         Message message = event.getMessage();
-        String[] args = message.getContentDisplay().split(" ");
-        String command = args[0].toLowerCase();
-        args = ArrayUtils.remove(args, 0);
-        AbstractCommand toExecute;
+        String content = message.getContentRaw();
         
-        if (!command.startsWith(PREFIX))
+        // Nearly every message is not a command, so reject those before
+        // doing anything that allocates.
+        if (!content.startsWith(PREFIX))
             return;
         
-        command = command.replaceFirst(PREFIX, "");
+        AbstractCommand toExecute = hifumiBot.getCommandIndex().findCommand(content, PREFIX.length());
         
-        if ((toExecute = hifumiBot.getCommandIndex().getCommand(command)) != null) {
-            CommandMeta cm = new CommandMeta(
-                    command, 
-                    toExecute.isAdminCommand(), 
-                    toExecute.getCategory(), 
-                    event.getChannel() instanceof TextChannel ? event.getGuild() : null, 
-                    event.getChannel(), 
-                    event.getMember(), 
-                    event.getAuthor(), 
-                    message, 
-                    event.getChannel() instanceof TextChannel ? message.getMentionedMembers() : Collections.emptyList(), 
-                    args
-            );
-            toExecute.run(cm);
+        if (toExecute == null || event.getAuthor().getIdLong() == hifumiBot.getJDA().getSelfUser().getIdLong())
+            return;
+        
+        if (toExecute.isAdminCommand()) {
+            // The one permission check for admin commands, made before
+            // dispatch so nobody else can take up a slot on the admin lane.
+            // Those with permission skip the rate limit, so that moderation
+            // keeps working during a raid.
+            if (!hifumiBot.getPermissionManager().hasPermission(event.getMember(), event.getAuthor()))
+                return;
+        } else if (!hifumiBot.getRateLimiter().tryAcquire(event.getAuthor().getIdLong(), event.getChannel().getIdLong(), toExecute.getName())) {
+            return;
         }
+        
+        // Shed commands are counted by the executor, so the result is not
+        // needed here
+        CommandMeta cm = new CommandMeta(toExecute.getName(), toExecute.isAdminCommand(), toExecute.getCategory(), event);
+        hifumiBot.getCommandExecutor().dispatch(toExecute, cm);
     }
 }
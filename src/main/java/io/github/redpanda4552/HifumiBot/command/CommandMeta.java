@@ -24,79 +24,154 @@
 package io.github.redpanda4552.HifumiBot.command;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import io.github.redpanda4552.HifumiBot.HifumiBot;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 
+/**
+ * Everything a command may want to know about its invocation. Anything
+ * which costs a lookup or a parse (the guild, the member, mentions, and the
+ * arguments) is resolved on first access and cached, so commands which never
+ * look at them never pay for them.
+ */
 public class CommandMeta {
 
+    private static final String[] NO_ARGS = new String[0];
+    
     private String command;
     private boolean admin;
     private String category;
-    private Guild guild;
+    private MessageReceivedEvent event;
     private MessageChannel channel;
-    private Member member;
     private User user;
     private Message message;
+    private boolean guildResolved, memberResolved;
+    private Guild guild;
+    private Member member;
     private List<Member> mentions;
     private String[] args;
     private HashMap<String, String> switches;
     
-    public CommandMeta(String command, boolean admin, String category, Guild guild, MessageChannel channel, Member member, User user, Message message, List<Member> mentions, String[] args) {
+    public CommandMeta(String command, boolean admin, String category, MessageReceivedEvent event) {
         this.command = command;
         this.admin = admin;
         this.category = category;
-        this.guild = guild;
-        this.channel = channel;
-        this.member = member;
-        this.user = user;
-        this.message = message;
-        this.mentions = mentions;
-        formatArgs(args);
+        this.event = event;
+        this.channel = event.getChannel();
+        this.user = event.getAuthor();
+        this.message = event.getMessage();
     }
     
-    private void formatArgs(String[] args) {
+    /**
+     * Split content into space delimited arguments, in a single pass over
+     * the original string. Everything before the first space is the command
+     * name and is skipped.
+     * <ul>
+     * <li>Runs of spaces produce empty arguments; trailing spaces are ignored.</li>
+     * <li>An argument starting with a dash names a switch, and the next
+     * argument is its value.</li>
+     * <li>An argument starting with a quote runs until an argument ending
+     * with a quote. The quotes are removed and the spaces between kept. An
+     * unterminated quote, or a switch with no value, is discarded.</li>
+     * </ul>
+     */
+    private void tokenize(String content) {
+        int end = content.length();
+        
+        while (end > 0 && content.charAt(end - 1) == ' ') {
+            end--;
+        }
+        
+        // Skip past the command name
+        int pos = content.indexOf(' ');
+        
+        if (pos == -1 || pos >= end) {
+            this.args = NO_ARGS;
+            return;
+        }
+        
         ArrayList<String> newArgs = new ArrayList<String>();
-        switches = new HashMap<String, String>();
-        String toInsert = null, switchStart = null;
-        boolean openQuote = false, openSwitch = false;
+        String switchName = null;
+        int quoteStart = -1;
+        pos++;
         
-        for (String arg : args) {
-            if (openQuote) {
-                toInsert += " " + arg;
-                
-                if (arg.endsWith("\"")) {
-                    openQuote = false;
+        while (true) {
+            int tokenEnd = content.indexOf(' ', pos);
+            
+            if (tokenEnd == -1 || tokenEnd > end)
+                tokenEnd = end;
+            
+            char first = tokenEnd > pos ? content.charAt(pos) : 0;
+            char last = tokenEnd > pos ? content.charAt(tokenEnd - 1) : 0;
+            
+            if (quoteStart != -1) {
+                if (last == '"') {
+                    String quoted = stripQuotes(content, quoteStart, tokenEnd);
+                    quoteStart = -1;
                     
-                    if (openSwitch) {
-                        openSwitch = false;
-                        switches.put(switchStart, toInsert.replaceAll("\"", ""));
+                    if (switchName != null) {
+                        putSwitch(switchName, quoted);
+                        switchName = null;
                     } else {
-                        newArgs.add(toInsert.replaceAll("\"", ""));
+                        newArgs.add(quoted);
                     }
                 }
-            } else if (!openSwitch && arg.startsWith("-")) {
-                openSwitch = true;
-                switchStart = arg.replaceFirst("-+", "");
-            } else if (!openQuote && arg.startsWith("\"") && !arg.endsWith("\"")) {
-                openQuote = true;
-                toInsert = arg;
-            } else if (openSwitch) {
-                openSwitch = false;
-                switches.put(switchStart, arg);
+            } else if (switchName == null && first == '-') {
+                int nameStart = pos;
+                
+                while (nameStart < tokenEnd && content.charAt(nameStart) == '-') {
+                    nameStart++;
+                }
+                
+                switchName = content.substring(nameStart, tokenEnd);
+            } else if (first == '"' && last != '"') {
+                quoteStart = pos;
+            } else if (switchName != null) {
+                putSwitch(switchName, content.substring(pos, tokenEnd));
+                switchName = null;
             } else {
-                newArgs.add(arg);
+                newArgs.add(content.substring(pos, tokenEnd));
             }
+            
+            if (tokenEnd == end)
+                break;
+            
+            pos = tokenEnd + 1;
         }
         
         this.args = newArgs.toArray(new String[newArgs.size()]);
     }
     
+    private static String stripQuotes(String content, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            
+            if (c != '"')
+                sb.append(c);
+        }
+        
+        return sb.toString();
+    }
+    
+    private void putSwitch(String name, String value) {
+        if (switches == null)
+            switches = new HashMap<String, String>();
+        
+        switches.put(name, value);
+    }
+    
     public String getCommand() {
         return command;
     }
@@ -109,7 +184,15 @@ public class CommandMeta {
         return category;
     }
     
-    public Guild getGuild() {
+    /**
+     * @return The guild, or null if this was not sent in a guild text channel.
+     */
+    public synchronized Guild getGuild() {
+        if (!guildResolved) {
+            guild = channel instanceof TextChannel ? event.getGuild() : null;
+            guildResolved = true;
+        }
+        
         return guild;
     }
     
@@ -117,7 +200,12 @@ public class CommandMeta {
         return channel;
     }
     
-    public Member getMember() {
+    public synchronized Member getMember() {
+        if (!memberResolved) {
+            member = event.getMember();
+            memberResolved = true;
+        }
+        
         return member;
     }
     
@@ -129,15 +217,30 @@ public class CommandMeta {
         return message;
     }
     
-    public List<Member> getMentions() {
+    public synchronized List<Member> getMentions() {
+        if (mentions == null)
+            mentions = channel instanceof TextChannel ? message.getMentionedMembers() : Collections.emptyList();
+        
         return mentions;
     }
     
-    public String[] getArgs() {
+    public synchronized String[] getArgs() {
+        if (args == null)
+            parse();
+        
         return args;
     }
     
-    public HashMap<String, String> getSwitches() {
-        return switches;
+    public synchronized Map<String, String> getSwitches() {
+        if (args == null)
+            parse();
+        
+        return switches != null ? switches : Collections.emptyMap();
+    }
+    
+    private void parse() {
+        long start = System.nanoTime();
+        tokenize(message.getContentDisplay());
+        HifumiBot.getSelf().getCommandMetrics().recordParse(command, System.nanoTime() - start);
     }
 }
@@ -0,0 +1,139 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.command;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.redpanda4552.HifumiBot.util.SlidingHistogram;
+
+/**
+ * Per command counters and latency histograms. Time spent on a command is
+ * split into parsing arguments out of the message, waiting in the
+ * executor's queue, executing the command, and waiting on Discord to accept
+ * any messages it sends.
+ */
+public class CommandMetrics {
+
+    private static final int WINDOW_SLICES = 10;
+    private static final ThreadLocal<String> currentCommand = new ThreadLocal<String>();
+    
+    public class Entry {
+
+        private AtomicLong invocations = new AtomicLong();
+        private AtomicLong errors = new AtomicLong();
+        private SlidingHistogram parse = new SlidingHistogram(windowSeconds, WINDOW_SLICES);
+        private SlidingHistogram queueWait = new SlidingHistogram(windowSeconds, WINDOW_SLICES);
+        private SlidingHistogram execute = new SlidingHistogram(windowSeconds, WINDOW_SLICES);
+        private SlidingHistogram send = new SlidingHistogram(windowSeconds, WINDOW_SLICES);
+        
+        public long getInvocations() {
+            return invocations.get();
+        }
+        
+        public long getErrors() {
+            return errors.get();
+        }
+        
+        public SlidingHistogram getParse() {
+            return parse;
+        }
+        
+        public SlidingHistogram getQueueWait() {
+            return queueWait;
+        }
+        
+        public SlidingHistogram getExecute() {
+            return execute;
+        }
+        
+        public SlidingHistogram getSend() {
+            return send;
+        }
+    }
+    
+    private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private long windowSeconds;
+    
+    /**
+     * @param windowSeconds - Length of the recent window reported alongside
+     * the totals since startup
+     */
+    public CommandMetrics(long windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+    
+    private Entry getOrCreate(String name) {
+        return entries.computeIfAbsent(name, k -> new Entry());
+    }
+    
+    public void recordParse(String name, long nanos) {
+        getOrCreate(name).parse.record(nanos);
+    }
+    
+    public void recordQueueWait(String name, long nanos) {
+        getOrCreate(name).queueWait.record(nanos);
+    }
+    
+    public void recordExecute(String name, long nanos, boolean error) {
+        Entry entry = getOrCreate(name);
+        entry.invocations.incrementAndGet();
+        
+        if (error)
+            entry.errors.incrementAndGet();
+        
+        entry.execute.record(nanos);
+    }
+    
+    public void recordSend(String name, long nanos) {
+        getOrCreate(name).send.record(nanos);
+    }
+    
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+    
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+    
+    /**
+     * Mark the calling thread as running a command, so that messages it sends
+     * are attributed to that command. Pass null once the command is done.
+     */
+    public static void setCurrentCommand(String name) {
+        if (name != null)
+            currentCommand.set(name);
+        else
+            currentCommand.remove();
+    }
+    
+    /**
+     * @return The command running on the calling thread, or null if none.
+     */
+    public static String getCurrentCommand() {
+        return currentCommand.get();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.command;
+
+import io.github.redpanda4552.HifumiBot.command.commands.AbstractCommand;
+
+/**
+ * Resolves command names character by character, directly against message
+ * content. Looking a command up never allocates, so messages which are not
+ * commands can be discarded for next to nothing.
+ * <p>
+ * Tries are immutable. {@link CommandTrie#put put()} and
+ * {@link CommandTrie#remove remove()} return a new trie which shares every
+ * node off of the changed path with the old one, so a change costs only the
+ * length of the name and the old trie stays valid for anyone still reading it.
+ */
+public class CommandTrie {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Node EMPTY_NODE = new Node(NO_KEYS, NO_CHILDREN, null);
+    private static final CommandTrie EMPTY = new CommandTrie(EMPTY_NODE);
+    
+    private static class Node {
+
+        private final char[] keys;
+        private final Node[] children;
+        private final AbstractCommand command;
+        
+        private Node(char[] keys, Node[] children, AbstractCommand command) {
+            this.keys = keys;
+            this.children = children;
+            this.command = command;
+        }
+        
+        private Node getChild(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            
+            return null;
+        }
+        
+        /**
+         * Copy this node with the child for a character replaced, added, or
+         * removed if the child is null.
+         */
+        private Node withChild(char c, Node child) {
+            int index = -1;
+            
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    index = i;
+                    break;
+                }
+            }
+            
+            if (index != -1 && child != null) {
+                Node[] newChildren = children.clone();
+                newChildren[index] = child;
+                return new Node(keys, newChildren, command);
+            } else if (index != -1) {
+                char[] newKeys = new char[keys.length - 1];
+                Node[] newChildren = new Node[children.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+                System.arraycopy(children, 0, newChildren, 0, index);
+                System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+                return new Node(newKeys, newChildren, command);
+            } else if (child != null) {
+                char[] newKeys = new char[keys.length + 1];
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newKeys[keys.length] = c;
+                newChildren[children.length] = child;
+                return new Node(newKeys, newChildren, command);
+            }
+            
+            return this;
+        }
+        
+        private boolean isEmpty() {
+            return command == null && keys.length == 0;
+        }
+    }
+    
+    private final Node root;
+    
+    private CommandTrie(Node root) {
+        this.root = root;
+    }
+    
+    public static CommandTrie empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * @return A trie with the command added, or replacing any command
+     * already under the name.
+     */
+    public CommandTrie put(String name, AbstractCommand command) {
+        return new CommandTrie(put(root, name, 0, command));
+    }
+    
+    private static Node put(Node node, String name, int i, AbstractCommand command) {
+        if (node == null)
+            node = EMPTY_NODE;
+        
+        if (i == name.length())
+            return new Node(node.keys, node.children, command);
+        
+        char c = name.charAt(i);
+        return node.withChild(c, put(node.getChild(c), name, i + 1, command));
+    }
+    
+    /**
+     * @return A trie without the named command. Nodes left with nothing
+     * under them are pruned.
+     */
+    public CommandTrie remove(String name) {
+        Node newRoot = remove(root, name, 0);
+        
+        if (newRoot == root)
+            return this;
+        
+        return new CommandTrie(newRoot != null ? newRoot : EMPTY_NODE);
+    }
+    
+    private static Node remove(Node node, String name, int i) {
+        Node ret;
+        
+        if (i == name.length()) {
+            if (node.command == null)
+                return node;
+            
+            ret = new Node(node.keys, node.children, null);
+        } else {
+            char c = name.charAt(i);
+            Node child = node.getChild(c);
+            
+            if (child == null)
+                return node;
+            
+            Node newChild = remove(child, name, i + 1);
+            
+            if (newChild == child)
+                return node;
+            
+            ret = node.withChild(c, newChild);
+        }
+        
+        return ret.isEmpty() ? null : ret;
+    }
+    
+    /**
+     * Find a command by its exact name.
+     * @return The command, or null if there is none by that name.
+     */
+    public AbstractCommand get(String name) {
+        Node node = root;
+        
+        for (int i = 0; i < name.length() && node != null; i++) {
+            node = node.getChild(name.charAt(i));
+        }
+        
+        return node != null ? node.command : null;
+    }
+    
+    /**
+     * Find the command named by the word starting at the given index of some
+     * content. The word ends at the first space or at the end of the content.
+     * Matching is case insensitive.
+     * @return The command, or null if the word is not a command name.
+     */
+    public AbstractCommand find(String content, int start) {
+        Node node = root;
+        
+        for (int i = start; i < content.length(); i++) {
+            char c = content.charAt(i);
+            
+            if (c == ' ')
+                break;
+            
+            node = node.getChild(Character.toLowerCase(c));
+            
+            if (node == null)
+                return null;
+        }
+        
+        return node.command;
+    }
+}
@@ -23,14 +23,26 @@
  */
 package io.github.redpanda4552.HifumiBot.command;
 
+import java.io.IOException;
+import java.util.Objects;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.commands.AbstractCommand;
-import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.EmbedTemplate;
 import net.dv8tion.jda.api.EmbedBuilder;
 
+@JsonAdapter(DynamicCommand.Adapter.class)
 public class DynamicCommand extends AbstractCommand {
 
     private String helpText, title, body, imageURL;
+    // Built on first use, and cleared whenever the embed's contents change
+    private transient volatile EmbedTemplate template;
     
     public DynamicCommand(String name, String category, boolean admin, String helpText, String title, String body, String imageURL) {
         super(name, category, admin);
@@ -39,21 +51,28 @@ public class DynamicCommand extends AbstractCommand {
         this.body = body;
         this.imageURL = imageURL;
     }
+    
+    /**
+     * Copy another dynamic command, so that it can be modified without
+     * touching the instance the CommandIndex is serving.
+     */
+    public DynamicCommand(DynamicCommand other) {
+        this(other.name, other.category, other.admin, other.helpText, other.title, other.body, other.imageURL);
+    }
 
     @Override
     protected void onExecute(CommandMeta cm) {
-        EmbedBuilder eb;
+        EmbedTemplate template = this.template;
         
-        if (cm.getMember() != null) {
-            eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
-        } else {
-            eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
+        if (template == null) {
+            EmbedBuilder eb = new EmbedBuilder();
+            eb.setTitle(title);
+            eb.setDescription(body);
+            eb.setImage(imageURL);
+            this.template = template = new EmbedTemplate(eb);
         }
         
-        eb.setTitle(title);
-        eb.setDescription(body);
-        eb.setImage(imageURL);
-        HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
+        HifumiBot.getSelf().sendMessage(cm.getChannel(), template.render(cm));
     }
     
     @Override
@@ -61,6 +80,26 @@ public class DynamicCommand extends AbstractCommand {
         return helpText;
     }
     
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getBody() {
+        return body;
+    }
+    
+    public String getImageURL() {
+        return imageURL;
+    }
+    
+    /**
+     * @return True if the other command has the same name and would behave
+     * exactly the same.
+     */
+    public boolean contentEquals(DynamicCommand other) {
+        return Objects.equals(name, other.name) && Objects.equals(category, other.category) && admin == other.admin && Objects.equals(helpText, other.helpText) && Objects.equals(title, other.title) && Objects.equals(body, other.body) && Objects.equals(imageURL, other.imageURL);
+    }
+    
     public void setCategory(String category) {
         this.category = category;
     }
@@ -75,13 +114,103 @@ public class DynamicCommand extends AbstractCommand {
     
     public void setTitle(String title) {
         this.title = title;
+        this.template = null;
     }
     
     public void setBody(String body) {
         this.body = body;
+        this.template = null;
     }
     
     public void setImageURL(String imageURL) {
         this.imageURL = imageURL;
+        this.template = null;
+    }
+    
+    /**
+     * Streams a command field by field, in the same shape reflection used to
+     * produce, and builds it through the constructor when reading.
+     */
+    public static class Adapter extends TypeAdapter<DynamicCommand> {
+
+        @Override
+        public void write(JsonWriter out, DynamicCommand command) throws IOException {
+            if (command == null) {
+                out.nullValue();
+                return;
+            }
+            
+            out.beginObject();
+            writeString(out, "helpText", command.helpText);
+            writeString(out, "title", command.title);
+            writeString(out, "body", command.body);
+            writeString(out, "imageURL", command.imageURL);
+            writeString(out, "name", command.name);
+            writeString(out, "category", command.category);
+            out.name("admin").value(command.admin);
+            out.endObject();
+        }
+        
+        @Override
+        public DynamicCommand read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            
+            String name = null, category = null, helpText = null, title = null, body = null, imageURL = null;
+            boolean admin = false;
+            in.beginObject();
+            
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "name":
+                    name = readString(in);
+                    break;
+                case "category":
+                    category = readString(in);
+                    break;
+                case "admin":
+                    if (in.peek() == JsonToken.NULL)
+                        in.nextNull();
+                    else
+                        admin = in.nextBoolean();
+                    break;
+                case "helpText":
+                    helpText = readString(in);
+                    break;
+                case "title":
+                    title = readString(in);
+                    break;
+                case "body":
+                    body = readString(in);
+                    break;
+                case "imageURL":
+                    imageURL = readString(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+                }
+            }
+            
+            in.endObject();
+            return new DynamicCommand(name, category, admin, helpText, title, body, imageURL);
+        }
+        
+        // Nulls are left out, as Gson does by default
+        private static void writeString(JsonWriter out, String name, String value) throws IOException {
+            if (value != null)
+                out.name(name).value(value);
+        }
+        
+        private static String readString(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            
+            return in.nextString();
+        }
     }
 }
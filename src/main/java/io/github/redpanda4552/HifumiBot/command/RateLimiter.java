@@ -0,0 +1,163 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.command;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.redpanda4552.HifumiBot.config.Config;
+
+/**
+ * Token bucket throttling for command dispatch, with one set of buckets per
+ * user, per channel and per command name.
+ * <p>
+ * Each bucket is a single timestamp: the time at which it will next be full
+ * (the "theoretical arrival time" form of a token bucket). Taking a token
+ * pushes that time forward by one refill interval, and a bucket refuses when
+ * the time is further ahead than its burst allows. A bucket whose time has
+ * passed is full and carries no information, so such buckets are swept out
+ * lazily every few minutes.
+ */
+public class RateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(5);
+    
+    private static class Buckets<K> {
+
+        private ConcurrentHashMap<K, AtomicLong> buckets = new ConcurrentHashMap<K, AtomicLong>();
+        private AtomicLong rejections = new AtomicLong();
+        private boolean enabled;
+        private long interval, tolerance;
+        
+        /**
+         * @param burst - Number of tokens a full bucket holds. Zero or less
+         * disables this set of buckets.
+         * @param refillMillis - Milliseconds to refill one token
+         */
+        private Buckets(int burst, long refillMillis) {
+            this.enabled = burst > 0 && refillMillis > 0;
+            this.interval = TimeUnit.MILLISECONDS.toNanos(refillMillis);
+            this.tolerance = interval * (burst - 1);
+        }
+        
+        private boolean tryAcquire(K key, long now) {
+            if (!enabled)
+                return true;
+            
+            AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            
+            while (true) {
+                long full = bucket.get();
+                long start = full - now > 0 ? full : now;
+                
+                if (start - now > tolerance) {
+                    rejections.incrementAndGet();
+                    return false;
+                }
+                
+                if (bucket.compareAndSet(full, start + interval))
+                    return true;
+            }
+        }
+        
+        /**
+         * Give back a token taken by {@link Buckets#tryAcquire tryAcquire()},
+         * when a later check refused the invocation anyway.
+         */
+        private void refund(K key) {
+            if (!enabled)
+                return;
+            
+            AtomicLong bucket = buckets.get(key);
+            
+            if (bucket != null)
+                bucket.addAndGet(-interval);
+        }
+        
+        private void sweep(long now) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+    
+    private Buckets<Long> users;
+    private Buckets<Long> channels;
+    private Buckets<String> commands;
+    private AtomicLong lastSweep;
+    
+    public RateLimiter(Config config) {
+        this.users = new Buckets<Long>(config.rateLimitUserBurst, config.rateLimitUserRefillMillis);
+        this.channels = new Buckets<Long>(config.rateLimitChannelBurst, config.rateLimitChannelRefillMillis);
+        this.commands = new Buckets<String>(config.rateLimitCommandBurst, config.rateLimitCommandRefillMillis);
+        this.lastSweep = new AtomicLong(System.nanoTime());
+    }
+    
+    /**
+     * Take a token from the user's, the channel's and the command's bucket.
+     * @return False if any of the three buckets is empty, in which case no
+     * tokens are taken.
+     */
+    public boolean tryAcquire(long userId, long channelId, String commandName) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        
+        if (!users.tryAcquire(userId, now))
+            return false;
+        
+        if (!channels.tryAcquire(channelId, now)) {
+            users.refund(userId);
+            return false;
+        }
+        
+        if (!commands.tryAcquire(commandName, now)) {
+            users.refund(userId);
+            channels.refund(channelId);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        
+        if (now - last > SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            users.sweep(now);
+            channels.sweep(now);
+            commands.sweep(now);
+        }
+    }
+    
+    public long getUserRejections() {
+        return users.rejections.get();
+    }
+    
+    public long getChannelRejections() {
+        return channels.rejections.get();
+    }
+    
+    public long getCommandRejections() {
+        return commands.rejections.get();
+    }
+}
@@ -25,6 +25,7 @@ package io.github.redpanda4552.HifumiBot.command.commands;
 
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
+import io.github.redpanda4552.HifumiBot.command.CommandMetrics;
 
 public abstract class AbstractCommand {
 
@@ -40,11 +41,21 @@ public abstract class AbstractCommand {
     }
     
     /**
-     * Do a prelimiary permissions check, and execute if it passes.
+     * Execute, recording how long it took. Permission to run admin commands
+     * is checked by the CommandInterpreter before it dispatches.
      */
     public void run(CommandMeta cm) {
-        if (!isAdminCommand() || HifumiBot.getSelf().getPermissionManager().hasPermission(cm.getMember(), cm.getUser()))
+        CommandMetrics.setCurrentCommand(name);
+        long start = System.nanoTime();
+        boolean error = true;
+        
+        try {
             onExecute(cm);
+            error = false;
+        } finally {
+            HifumiBot.getSelf().getCommandMetrics().recordExecute(name, System.nanoTime() - start, error);
+            CommandMetrics.setCurrentCommand(null);
+        }
     }
     
     /**
@@ -56,6 +67,24 @@ public abstract class AbstractCommand {
         return !arg.contains(" ");
     }
     
+    /**
+     * Build a key identifying a query made with this command, so that
+     * identical queries running at the same time can be coalesced. Arguments
+     * are kept delimited, so a quoted argument never collides with the same
+     * words given separately.
+     * @param normalize - Trim and lowercase the arguments. Only set this if
+     * the command treats arguments that way itself.
+     */
+    protected String getQueryKey(String[] args, boolean normalize) {
+        StringBuilder sb = new StringBuilder(name);
+        
+        for (String arg : args) {
+            sb.append('\u0000').append(normalize ? arg.toLowerCase().trim() : arg);
+        }
+        
+        return sb.toString();
+    }
+    
     public boolean isAdminCommand() {
         return admin;
     }
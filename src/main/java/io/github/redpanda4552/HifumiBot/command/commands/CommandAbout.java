@@ -26,30 +26,27 @@ package io.github.redpanda4552.HifumiBot.command.commands;
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
 import io.github.redpanda4552.HifumiBot.config.ConfigManager;
-import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.EmbedTemplate;
 import net.dv8tion.jda.api.EmbedBuilder;
 
 public class CommandAbout extends AbstractCommand {
 
+    private final EmbedTemplate about;
+    
     public CommandAbout() {
         super("about", CATEGORY_BUILTIN, false);
-    }
-
-    @Override
-    protected void onExecute(CommandMeta cm) {
-        EmbedBuilder eb;
-        
-        if (cm.getMember() != null) {
-            eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
-        } else {
-            eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
-        }
-        
+        EmbedBuilder eb = new EmbedBuilder();
         eb.setTitle("About HifumiBot");
         eb.setDescription("A helper bot for the PCSX2 server.");
         eb.addField("Created By", "pandubz", true);
         String version = getClass().getPackage().getImplementationVersion();
         eb.addField("Version", version != null ? version : "[Debug Mode]", true);
+        about = new EmbedTemplate(eb);
+    }
+
+    @Override
+    protected void onExecute(CommandMeta cm) {
+        EmbedBuilder eb = about.toBuilder(cm);
         eb.addField("Config Size", (ConfigManager.file.length() / 1024) + " KB", true);
         HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
     }
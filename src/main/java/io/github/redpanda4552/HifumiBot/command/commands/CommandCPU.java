@@ -23,101 +23,49 @@
  */
 package io.github.redpanda4552.HifumiBot.command.commands;
 
-import java.util.HashMap;
-import java.util.Set;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 
 import io.github.redpanda4552.HifumiBot.CpuIndex;
+import io.github.redpanda4552.HifumiBot.HardwareCatalog;
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandInterpreter;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
+import io.github.redpanda4552.HifumiBot.util.EmbedTemplate;
 import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.SingleFlight;
 import net.dv8tion.jda.api.EmbedBuilder;
 
 public class CommandCPU extends AbstractCommand {
 
-    private enum CPURating {
-        OVERKILL("Overkill", 2800),
-        GREAT("Great for most", 2400),
-        GOOD("Good for most", 2000),
-        MINIMUM_3D("Okay for some 3D", 1600),
-        MINIMUM_2D("Okay for some 2D", 1200),
-        VERY_SLOW("Very Slow", 800),
-        AWFUL("Awful", 0);
-        
-        private String displayName;
-        private int minimum;
-        
-        private CPURating(String displayName, int minimum) {
-            this.displayName = displayName;
-            this.minimum = minimum;
-        }
-        
-        public String getDisplayName() {
-            return displayName;
-        }
-        
-        public int getMinimum() {
-            return minimum;
-        }
-    }
+    private static final int MAX_RESULTS = 5;
+    
+    private SingleFlight<String, List<HardwareCatalog.Entry>> searches = new SingleFlight<String, List<HardwareCatalog.Entry>>();
+    private final EmbedTemplate info;
     
     public CommandCPU() {
         super("cpu", CATEGORY_BUILTIN, false);
+        EmbedBuilder eb = new EmbedBuilder();
+        eb.setTitle("About Single Thread Ratings (STR)");
+        eb.appendDescription("**Single Thread Rating** (STR) is a benchmarking statistic used by Passmark's CPU benchmarking software. ")
+          .appendDescription("The statistic indicates how powerful a single thread on a CPU is. ")
+          .appendDescription("Though PCSX2 does have multiple threads, each thread still needs to be powerful in order to run emulation at full speed. ");
+        eb.addField("Direct link", CpuIndex.PASSMARK_STR_URL, false);
+        eb.addField("Command Usage", "`" + CommandInterpreter.PREFIX + "str <cpu model here>`", false);
+        info = new EmbedTemplate(eb);
     }
 
     @Override
     protected void onExecute(CommandMeta cm) {
         // Search
         if (cm.getArgs().length == 0) {
-            EmbedBuilder eb;
-            
-            if (cm.getMember() != null) {
-                eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
-            } else { 
-                eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
-            }
-            
-            eb.setTitle("About Single Thread Ratings (STR)");
-            eb.appendDescription("**Single Thread Rating** (STR) is a benchmarking statistic used by Passmark's CPU benchmarking software. ")
-              .appendDescription("The statistic indicates how powerful a single thread on a CPU is. ")
-              .appendDescription("Though PCSX2 does have multiple threads, each thread still needs to be powerful in order to run emulation at full speed. ");
-            eb.addField("Direct link", CpuIndex.PASSMARK_STR_URL, false);
-            eb.addField("Command Usage", "`" + CommandInterpreter.PREFIX + "str <cpu model here>`", false);
-            HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
+            HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), info.render(cm));
             return;
         }
         
         CpuIndex cpuIndex = HifumiBot.getSelf().getCpuIndex();
-        
-        HashMap<String, Float> results = new HashMap<String, Float>();
-        Set<String> s = cpuIndex.getAllCpus();
-        
-        for (String cpuName : s) {
-            String normalized = cpuName.toLowerCase().trim();
-            
-            float toPush = 0;
-            
-            for (String arg : cm.getArgs()) {
-                // Contains
-                if (normalized.contains(arg.toLowerCase().trim())) {
-                    toPush += 0.5;
-                }
-                
-                // Whole word match
-                for (String cpuPart : cpuName.replace("-", " ").split(" ")) {
-                    if (cpuPart.equals(arg.toLowerCase().trim())) {
-                        toPush += 1;
-                    }
-                }
-            }
-            
-            if (toPush > 0) {
-                results.put(cpuName, toPush);
-            }
-        }
-        
+        List<HardwareCatalog.Entry> matches = searches.run(getQueryKey(cm.getArgs(), true), () -> cpuIndex.getCatalog().search(cm.getArgs(), MAX_RESULTS));
         EmbedBuilder eb;
         
         if (cm.getMember() != null) {
@@ -126,32 +74,11 @@ public class CommandCPU extends AbstractCommand {
             eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
         }
         
-        if (results.size() > 0) {
+        if (matches.size() > 0) {
             eb.setTitle("Query Results for \"" + StringUtils.join(cm.getArgs(), " ") + "\"");
-            String highestName = null;
-            float highestWeight = 0;
             
-            while (!results.isEmpty() && eb.getFields().size() < 5) {
-                for (String cpuName : results.keySet()) {
-                    if (results.get(cpuName) > highestWeight) {
-                        highestName = cpuName;
-                        highestWeight = results.get(cpuName);
-                    }
-                }
-                
-                results.remove(highestName);
-                highestWeight = 0;
-                int highestScore = Integer.parseInt(cpuIndex.getCpuRating(highestName).replaceAll("[,. ]", ""));
-                String highestScoreDescription = "";
-                
-                for (int i = 0; i < CPURating.values().length; i++) {
-                    if (highestScore >= CPURating.values()[i].getMinimum()) {
-                        highestScoreDescription = CPURating.values()[i].getDisplayName();
-                        break;
-                    }
-                }
-                
-                eb.addField(highestName, highestScore + " (" + highestScoreDescription + ")", false);
+            for (HardwareCatalog.Entry cpu : matches) {
+                eb.addField(cpu.getName(), cpu.getScore() + " (" + cpu.getTierName() + ")", false);
             }
             
             eb.setColor(0x00ff00);
@@ -160,14 +87,9 @@ public class CommandCPU extends AbstractCommand {
             eb.setColor(0xff0000);
         }
         
-        try {
-            HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        
+        HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), eb.build());
     }
-
+    
     @Override
     public String getHelpText() {
         return "Look up the Single Thread Rating for a CPU";
@@ -25,14 +25,18 @@ package io.github.redpanda4552.HifumiBot.command.commands;
 
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
-import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.EmbedTemplate;
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.TextChannel;
 
 public class CommandDev extends AbstractCommand {
 
     private final String DEV_CHANNEL = "dev-builds";
     
+    private EmbedTemplate devBuildsInfo;
+    private long devBuildsInfoGuildId, devBuildsChannelId;
+    
     public CommandDev() {
         super("dev", CATEGORY_BUILTIN, false);
     }
@@ -45,13 +49,28 @@ public class CommandDev extends AbstractCommand {
         }
             
         
-        EmbedBuilder eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
-        eb.setTitle("PCSX2 Development Builds");
-        eb.setDescription("Problems? Looking for PCSX2 updates? Consider using PCSX2 development builds! I post a message in ");
-        TextChannel devBuilds = cm.getGuild().getTextChannelsByName(DEV_CHANNEL, false).get(0);
-        eb.appendDescription(devBuilds.getAsMention())
-          .appendDescription(" whenever a new development build is ready!");
-        HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
+        HifumiBot.getSelf().sendMessage(cm.getChannel(), getDevBuildsInfo(cm.getGuild()).render(cm));
+    }
+    
+    /**
+     * Get the dev builds embed, building it the first time it is needed in a
+     * guild since it links that guild's dev builds channel. It is built again
+     * if that channel has since been deleted.
+     */
+    private synchronized EmbedTemplate getDevBuildsInfo(Guild guild) {
+        if (devBuildsInfo == null || devBuildsInfoGuildId != guild.getIdLong() || guild.getTextChannelById(devBuildsChannelId) == null) {
+            EmbedBuilder eb = new EmbedBuilder();
+            eb.setTitle("PCSX2 Development Builds");
+            eb.setDescription("Problems? Looking for PCSX2 updates? Consider using PCSX2 development builds! I post a message in ");
+            TextChannel devBuilds = guild.getTextChannelsByName(DEV_CHANNEL, false).get(0);
+            eb.appendDescription(devBuilds.getAsMention())
+              .appendDescription(" whenever a new development build is ready!");
+            devBuildsInfo = new EmbedTemplate(eb);
+            devBuildsInfoGuildId = guild.getIdLong();
+            devBuildsChannelId = devBuilds.getIdLong();
+        }
+        
+        return devBuildsInfo;
     }
 
     @Override
@@ -24,7 +24,7 @@
 package io.github.redpanda4552.HifumiBot.command.commands;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
 
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
@@ -68,8 +68,11 @@ public class CommandDynCmd extends AbstractCommand {
                 return;
             } else if (dyncmd == null) {
                 dyncmd = new DynamicCommand(name, CATEGORY_NONE, false, "", null, null, null);
+            } else {
+                // Edit a copy; the index swaps it in once we are done
+                dyncmd = new DynamicCommand(dyncmd);
             }
-            HashMap<String, String> switches = cm.getSwitches();
+            Map<String, String> switches = cm.getSwitches();
             
             for (String switchName : switches.keySet()) {
                 String switchValue = switches.get(switchName);
@@ -23,103 +23,54 @@
  */
 package io.github.redpanda4552.HifumiBot.command.commands;
 
-import java.util.HashMap;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 
 import io.github.redpanda4552.HifumiBot.GpuIndex;
+import io.github.redpanda4552.HifumiBot.HardwareCatalog;
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandInterpreter;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
+import io.github.redpanda4552.HifumiBot.util.EmbedTemplate;
 import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.SingleFlight;
 import net.dv8tion.jda.api.EmbedBuilder;
 
 public class CommandGPU extends AbstractCommand {
 
-    private enum GPURating {
-        x8NATIVE("8x Native (~5K)", 13030),
-        x6NATIVE("6x Native (~4K)", 8660),
-        x5NATIVE("5x Native (~3K)", 6700),
-        x4NATIVE("4x Native (~2K)", 4890),
-        x3NATIVE("3x Native (~1080p)", 3230),
-        x2NATIVE("2x Native (~720p)", 1720),
-        NATIVE("Native", 360),
-        SLOW("Slow", 0);
-        
-        private String displayName;
-        private int minimum;
-        
-        private GPURating(String displayName, int minimum) {
-            this.displayName = displayName;
-            this.minimum = minimum;
-        }
-        
-        public String getDisplayName() {
-            return displayName;
-        }
-        
-        public int getMinimum() {
-            return minimum;
-        }
-    }
+    private static final int MAX_RESULTS = 5;
+    
+    private SingleFlight<String, List<HardwareCatalog.Entry>> searches = new SingleFlight<String, List<HardwareCatalog.Entry>>();
+    private final EmbedTemplate info;
     
     public CommandGPU() {
         super("gpu", CATEGORY_BUILTIN, false);
+        EmbedBuilder eb = new EmbedBuilder();
+        eb.setTitle("About GPU Ratings");
+        eb.appendDescription("Passmark's GPU benchmarking software measures overall performance of GPUs. ")
+          .appendDescription("Higher upscaling quality in PCSX2 will require increasingly powerful GPUs, ")
+          .appendDescription("so this tool will help you determine what Internal Resolution a GPU is capable of. ")
+          .appendDescription("*These ratings should only be used as a rough guide; **some games are unusually demanding ")
+          .appendDescription("on the GPU and will still have performance problems.***");
+        eb.addField("High End GPUs", GpuIndex.PASSMARK_HIGH_END, false);
+        eb.addField("Mid-High GPUs", GpuIndex.PASSMARK_MID_HIGH, false);
+        eb.addField("Mid-Low GPUs", GpuIndex.PASSMARK_MID_LOW, false);
+        eb.addField("Low End GPUs", GpuIndex.PASSMARK_LOW_END, false);
+        eb.addField("Command Usage", "`" + CommandInterpreter.PREFIX + this.getName() + " <gpu model here>`", false);
+        info = new EmbedTemplate(eb);
     }
     
     @Override
     protected void onExecute(CommandMeta cm) {
         // Search
         if (cm.getArgs().length == 0) {
-            EmbedBuilder eb;
-            
-            if (cm.getMember() != null)
-                eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
-            else 
-                eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
-            
-            eb.setTitle("About GPU Ratings");
-            eb.appendDescription("Passmark's GPU benchmarking software measures overall performance of GPUs. ")
-              .appendDescription("Higher upscaling quality in PCSX2 will require increasingly powerful GPUs, ")
-              .appendDescription("so this tool will help you determine what Internal Resolution a GPU is capable of. ")
-              .appendDescription("*These ratings should only be used as a rough guide; **some games are unusually demanding ")
-              .appendDescription("on the GPU and will still have performance problems.***");
-            eb.addField("High End GPUs", GpuIndex.PASSMARK_HIGH_END, false);
-            eb.addField("Mid-High GPUs", GpuIndex.PASSMARK_MID_HIGH, false);
-            eb.addField("Mid-Low GPUs", GpuIndex.PASSMARK_MID_LOW, false);
-            eb.addField("Low End GPUs", GpuIndex.PASSMARK_LOW_END, false);
-            eb.addField("Command Usage", "`" + CommandInterpreter.PREFIX + this.getName() + " <gpu model here>`", false);
-            HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
+            HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), info.render(cm));
             return;
         }
         
         GpuIndex gpuIndex = HifumiBot.getSelf().getGpuIndex();
-        HashMap<String, Float> results = new HashMap<String, Float>();
-        
-        for (String gpuName : gpuIndex.getAllGpus()) {
-            String normalized = gpuName.toLowerCase().trim();
-            
-            float toPush = 0;
-            
-            for (String arg : cm.getArgs()) {
-                // Contains
-                if (normalized.contains(arg.toLowerCase().trim())) {
-                    toPush += 0.5;
-                }
-                
-                // Whole word match
-                for (String gpuPart : normalized.replace("-", " ").split(" ")) {
-                    if (gpuPart.equals(arg.toLowerCase().trim())) {
-                        toPush += 1;
-                    }
-                }
-            }
-            
-            if (toPush > 0) {
-                results.put(gpuName, toPush);
-            }
-        }
-        
+        List<HardwareCatalog.Entry> matches = searches.run(getQueryKey(cm.getArgs(), true), () -> gpuIndex.getCatalog().search(cm.getArgs(), MAX_RESULTS));
         EmbedBuilder eb;
         
         if (cm.getMember() != null) {
@@ -128,38 +79,12 @@ public class CommandGPU extends AbstractCommand {
             eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
         }
         
-        if (results.size() > 0) {
+        if (matches.size() > 0) {
             eb.setTitle("Query Results for \"" + StringUtils.join(cm.getArgs(), " ") + "\"");
             eb.setDescription(":warning: This feature is in BETA! Please do not take these results as absolute!");
-            String highestName = null;
-            float highestWeight = 0;
             
-            while (!results.isEmpty() && eb.getFields().size() < 5) {
-                for (String gpuName : results.keySet()) {
-                    if (results.get(gpuName) > highestWeight) {
-                        highestName = gpuName;
-                        highestWeight = results.get(gpuName);
-                    }
-                }
-                
-                results.remove(highestName);
-                highestWeight = 0;
-                int highestScore = -1;
-                
-                try {
-                    highestScore = Integer.parseInt(gpuIndex.getGpuRating(highestName).replaceAll("[,. ]", ""));
-                } catch (NumberFormatException e) { }
-                
-                String highestScoreDescription = "";
-                
-                for (int i = 0; i < GPURating.values().length; i++) {
-                    if (highestScore >= GPURating.values()[i].getMinimum()) {
-                        highestScoreDescription = GPURating.values()[i].getDisplayName();
-                        break;
-                    }
-                }
-                
-                eb.addField(highestName, highestScore + " - " + highestScoreDescription, false);
+            for (HardwareCatalog.Entry gpu : matches) {
+                eb.addField(gpu.getName(), gpu.getScore() + " - " + gpu.getTierName(), false);
             }
             
             eb.setColor(0x00ff00);
@@ -168,7 +93,7 @@ public class CommandGPU extends AbstractCommand {
             eb.setColor(0xff0000);
         }
         
-        HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
+        HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), eb.build());
     }
     
     @Override
@@ -23,10 +23,8 @@
  */
 package io.github.redpanda4552.HifumiBot.command.commands;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 import io.github.redpanda4552.HifumiBot.HifumiBot;
+import io.github.redpanda4552.HifumiBot.command.CommandIndex;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 
@@ -41,9 +39,10 @@ public class CommandHelp extends AbstractCommand {
         String category = "builtin";
         int pageNumber = 1;
         MessageEmbed toSend = null;
-        HashMap<String, ArrayList<MessageEmbed>> helpPages = HifumiBot.getSelf().getCommandIndex().getHelpPages();
+        CommandIndex commandIndex = HifumiBot.getSelf().getCommandIndex();
+        int pageCount = cm.getArgs().length >= 1 ? commandIndex.getHelpPageCount(cm.getArgs()[0]) : 0;
         
-        if (cm.getArgs().length >= 1 && helpPages.get(cm.getArgs()[0]) != null) {
+        if (pageCount > 0) {
             category = cm.getArgs()[0];
             
             if (cm.getArgs().length >= 2) {
@@ -52,18 +51,19 @@ public class CommandHelp extends AbstractCommand {
                 } catch (NumberFormatException e) { }
             }
             
-            if (pageNumber > helpPages.get(category).size())
-                pageNumber = helpPages.get(category).size() - 1;
+            if (pageNumber > pageCount)
+                pageNumber = pageCount - 1;
             
             if (pageNumber < 1)
                 pageNumber = 1;
             
-            toSend = helpPages.get(category).get(pageNumber - 1);
+            toSend = commandIndex.getHelpPage(category, pageNumber);
         } else {
-            toSend = HifumiBot.getSelf().getCommandIndex().getHelpRootPage();
+            toSend = commandIndex.getHelpRootPage();
         }
         
-        HifumiBot.getSelf().sendMessage(cm.getUser().openPrivateChannel().complete(), toSend);
+        MessageEmbed page = toSend;
+        cm.getUser().openPrivateChannel().queue(channel -> HifumiBot.getSelf().sendMessageAsync(channel, page));
     }
     
     @Override
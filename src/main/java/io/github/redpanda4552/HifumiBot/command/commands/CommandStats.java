@@ -0,0 +1,122 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.command.commands;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import io.github.redpanda4552.HifumiBot.HifumiBot;
+import io.github.redpanda4552.HifumiBot.command.CommandMeta;
+import io.github.redpanda4552.HifumiBot.command.CommandMetrics;
+import io.github.redpanda4552.HifumiBot.command.CommandMetrics.Entry;
+import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.LatencyHistogram;
+import io.github.redpanda4552.HifumiBot.util.SlidingHistogram;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+public class CommandStats extends AbstractCommand {
+
+    // Leave room in the embed for the executor, shed and rate limit fields
+    private static final int MAX_COMMANDS = 20;
+    // Kept free for the note saying how many commands were left out
+    private static final int OMITTED_NOTE_RESERVE = 64;
+    
+    public CommandStats() {
+        super("stats", CATEGORY_BUILTIN, true);
+    }
+    
+    @Override
+    protected void onExecute(CommandMeta cm) {
+        CommandMetrics metrics = HifumiBot.getSelf().getCommandMetrics();
+        EmbedBuilder eb;
+        
+        if (cm.getMember() != null) {
+            eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
+        } else {
+            eb = EmbedUtil.newFootedEmbedBuilder(cm.getUser());
+        }
+        
+        eb.setTitle("Command Statistics");
+        eb.setDescription("p50 / p99 / max, since startup and over the last " + metrics.getWindowSeconds() + " seconds.");
+        eb.addField("Executor", "Queued: " + HifumiBot.getSelf().getCommandExecutor().getQueueDepth() + "\nRunning: " + HifumiBot.getSelf().getCommandExecutor().getActiveCount(), true);
+        eb.addField("Admin Lane", "Queued: " + HifumiBot.getSelf().getCommandExecutor().getAdminQueueDepth() + "\nRunning: " + HifumiBot.getSelf().getCommandExecutor().getAdminActiveCount(), true);
+        eb.addField("Shed", "Queue full: " + HifumiBot.getSelf().getCommandExecutor().getShedCount() + "\nPast deadline: " + HifumiBot.getSelf().getCommandExecutor().getExpiredCount(), true);
+        eb.addField("Rate Limited", "Users: " + HifumiBot.getSelf().getRateLimiter().getUserRejections() + "\nChannels: " + HifumiBot.getSelf().getRateLimiter().getChannelRejections() + "\nCommands: " + HifumiBot.getSelf().getRateLimiter().getCommandRejections(), true);
+        
+        ArrayList<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(metrics.getEntries().entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getInvocations(), a.getValue().getInvocations()));
+        
+        int shown = 0;
+        
+        for (; shown < entries.size() && shown < MAX_COMMANDS; shown++) {
+            Entry entry = entries.get(shown).getValue();
+            StringBuilder sb = new StringBuilder("```");
+            appendLine(sb, "Parse", entry.getParse());
+            appendLine(sb, "Queue", entry.getQueueWait());
+            appendLine(sb, "Exec", entry.getExecute());
+            appendLine(sb, "Send", entry.getSend());
+            sb.append("```");
+            String name = entries.get(shown).getKey() + " (" + entry.getInvocations() + " runs, " + entry.getErrors() + " errors)";
+            
+            // Busiest first, so stop at the first that would make the embed too long to send
+            if (eb.length() + name.length() + sb.length() > MessageEmbed.EMBED_MAX_LENGTH_BOT - OMITTED_NOTE_RESERVE)
+                break;
+            
+            eb.addField(name, sb.toString(), false);
+        }
+        
+        if (shown < entries.size())
+            eb.appendDescription("\n" + (entries.size() - shown) + " less used commands not shown.");
+        
+        HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), eb.build());
+    }
+    
+    private void appendLine(StringBuilder sb, String label, SlidingHistogram histogram) {
+        LatencyHistogram total = histogram.getTotal();
+        LatencyHistogram window = histogram.getWindow();
+        sb.append(String.format("%-6s%s | %s%n", label, format(total), format(window)));
+    }
+    
+    private String format(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0)
+            return "-";
+        
+        return formatMicros(histogram.getPercentile(50)) + " / " + formatMicros(histogram.getPercentile(99)) + " / " + formatMicros(histogram.getMax());
+    }
+    
+    private String formatMicros(long micros) {
+        if (micros < 1000)
+            return micros + "us";
+        else if (micros < 1000000)
+            return String.format("%.1fms", micros / 1000.0);
+        else
+            return String.format("%.2fs", micros / 1000000.0);
+    }
+    
+    @Override
+    public String getHelpText() {
+        return "Show command latency and throughput statistics";
+    }
+}
@@ -25,8 +25,9 @@ package io.github.redpanda4552.HifumiBot.command.commands;
 
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
-import io.github.redpanda4552.HifumiBot.util.EmbedUtil;
+import io.github.redpanda4552.HifumiBot.util.EmbedTemplate;
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.exceptions.InsufficientPermissionException;
@@ -35,6 +36,9 @@ public class CommandWarez extends AbstractCommand {
 
     public static final String RULES_CHANNEL = "welcome-rules", WAREZ_ROLE_ID = "535718317864910850";
     
+    private EmbedTemplate rules;
+    private long rulesGuildId, rulesChannelId;
+    
     public CommandWarez() {
         super("warez", CATEGORY_BUILTIN, true);
     }
@@ -44,20 +48,7 @@ public class CommandWarez extends AbstractCommand {
         if (!(cm.getChannel() instanceof TextChannel))
             return;
         
-        EmbedBuilder eb = EmbedUtil.newFootedEmbedBuilder(cm.getMember());
-        eb.setTitle("PCSX2 Anti-Warez Rules");
-        eb.setDescription("As per ");
-        TextChannel welcomeRules = cm.getGuild().getTextChannelsByName(RULES_CHANNEL, false).get(0);
-        eb.appendDescription(welcomeRules.getAsMention())
-          .appendDescription(", our server **does not support** piracy.\n")
-          .appendDescription("- No help or support will be given to anyone who uses pirated games, BIOS files, or other materials\n")
-          .appendDescription("- Do not discuss how to pirate games, BIOS files, or other materials\n")
-          .appendDescription("- Do not discuss why you think piracy should be allowed\n");
-        eb.addField("Enforcement", "Enforcement is at the discretion of server staff, as they see fit.", false);
-        eb.addField("Appeal", "You may appeal a warez tag by proving that you own the item in question and disposing of any pirated copies. Staff will want to see some visual proof that you own the item (E.g. A picture of the item with your Discord username and the current date on a sticky note next to it).", false);
-        eb.addField("Your Stance On Piracy", "We are not here to argue. Please forward all complaints about copyright law to Sony, or your local government's copyright enforcement agency.", false);
-        eb.addField("\"But a friend gave it to me!\" or \"I own a copy, and just downloaded it instead!\"", "Games, BIOS files and other materials must be from discs, a console or other device that you own.", false);
-        HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
+        HifumiBot.getSelf().sendMessage(cm.getChannel(), getRules(cm.getGuild()).render(cm));
         
         for (Member member : cm.getMentions()) {
             if (!HifumiBot.getSelf().getPermissionManager().hasPermission(member, null)) {
@@ -70,6 +61,34 @@ public class CommandWarez extends AbstractCommand {
         }
     }
 
+    /**
+     * Get the rules embed, building it the first time it is needed in a guild
+     * since it links that guild's rules channel. It is built again if that
+     * channel has since been deleted, so the mention never goes stale.
+     */
+    private synchronized EmbedTemplate getRules(Guild guild) {
+        if (rules == null || rulesGuildId != guild.getIdLong() || guild.getTextChannelById(rulesChannelId) == null) {
+            EmbedBuilder eb = new EmbedBuilder();
+            eb.setTitle("PCSX2 Anti-Warez Rules");
+            eb.setDescription("As per ");
+            TextChannel welcomeRules = guild.getTextChannelsByName(RULES_CHANNEL, false).get(0);
+            eb.appendDescription(welcomeRules.getAsMention())
+              .appendDescription(", our server **does not support** piracy.\n")
+              .appendDescription("- No help or support will be given to anyone who uses pirated games, BIOS files, or other materials\n")
+              .appendDescription("- Do not discuss how to pirate games, BIOS files, or other materials\n")
+              .appendDescription("- Do not discuss why you think piracy should be allowed\n");
+            eb.addField("Enforcement", "Enforcement is at the discretion of server staff, as they see fit.", false);
+            eb.addField("Appeal", "You may appeal a warez tag by proving that you own the item in question and disposing of any pirated copies. Staff will want to see some visual proof that you own the item (E.g. A picture of the item with your Discord username and the current date on a sticky note next to it).", false);
+            eb.addField("Your Stance On Piracy", "We are not here to argue. Please forward all complaints about copyright law to Sony, or your local government's copyright enforcement agency.", false);
+            eb.addField("\"But a friend gave it to me!\" or \"I own a copy, and just downloaded it instead!\"", "Games, BIOS files and other materials must be from discs, a console or other device that you own.", false);
+            rules = new EmbedTemplate(eb);
+            rulesGuildId = guild.getIdLong();
+            rulesChannelId = welcomeRules.getIdLong();
+        }
+        
+        return rules;
+    }
+    
     @Override
     public String getHelpText() {
         return "Print a dialog about warez/piracy rules";
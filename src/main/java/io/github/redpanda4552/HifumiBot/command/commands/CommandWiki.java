@@ -23,17 +23,27 @@
  */
 package io.github.redpanda4552.HifumiBot.command.commands;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import io.github.redpanda4552.HifumiBot.command.CommandInterpreter;
 import io.github.redpanda4552.HifumiBot.command.CommandMeta;
+import io.github.redpanda4552.HifumiBot.util.SingleFlight;
+import io.github.redpanda4552.HifumiBot.util.TopK;
 import io.github.redpanda4552.HifumiBot.wiki.Emotes;
+import io.github.redpanda4552.HifumiBot.wiki.WikiPage;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Message;
 
 public class CommandWiki extends AbstractCommand {
 
+    // One for each number reaction
+    private static final int MAX_RESULTS = 6;
+    
+    private SingleFlight<String, List<String>> searches = new SingleFlight<String, List<String>>();
+    
     public CommandWiki() {
         super("wiki", CATEGORY_BUILTIN, false);
     }
@@ -41,19 +51,72 @@ public class CommandWiki extends AbstractCommand {
     @Override
     protected void onExecute(CommandMeta cm) {
         if (cm.getArgs().length == 0) {
-            HifumiBot.getSelf().sendMessage(cm.getChannel(), "I can't search for nothing! Try `" + CommandInterpreter.PREFIX + "wiki <title of game here>`");
+            HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), "I can't search for nothing! Try `" + CommandInterpreter.PREFIX + "wiki <title of game here>`");
             return;
         }
         
-        HashMap<String, Float> results = new HashMap<String, Float>();
+        List<String> matches = searches.run(getQueryKey(cm.getArgs(), false), () -> search(cm.getArgs()));
+        EmbedBuilder eb = new EmbedBuilder();
+        int i = 0;
+        
+        if (matches.size() > 0) {
+            eb.setTitle("Query Results");
+            
+            for (String name : matches) {
+                eb.addField(String.valueOf(++i), name, false);
+            }
+            
+            eb.setFooter("Click the reaction number matching the game you are looking for.\nThis message will self-modify with it's wiki information.", HifumiBot.getSelf().getJDA().getSelfUser().getAvatarUrl());
+        } else {
+            eb.setTitle("No results matched your query!");
+            eb.setColor(0xff0000);
+        }
+        
+        CompletableFuture<Message> sent = HifumiBot.getSelf().sendMessageAsync(cm.getChannel(), eb.build());
+        
+        if (eb.getFields().size() == 1) {
+            // Fetch the wiki page while the results message is still in flight
+            WikiPage wikiPage = HifumiBot.getSelf().getWikiIndex().fetchPage(eb.getFields().get(0).getValue());
+            sent.thenAccept(msg -> HifumiBot.getSelf().getEventListener().finalizeMessage(msg, wikiPage, cm.getUser().getId()));
+        } else {
+            int resultCount = i;
+            
+            sent.thenAccept(msg -> {
+                // String concatenation with unicodes is apparently punishable by build error, so we instead have this.
+                if (resultCount > 0)
+                    msg.addReaction(Emotes.ONE).queue();
+                if (resultCount > 1)
+                    msg.addReaction(Emotes.TWO).queue();
+                if (resultCount > 2)
+                    msg.addReaction(Emotes.THREE).queue();
+                if (resultCount > 3)
+                    msg.addReaction(Emotes.FOUR).queue();
+                if (resultCount > 4)
+                    msg.addReaction(Emotes.FIVE).queue();
+                if (resultCount > 5)
+                    msg.addReaction(Emotes.SIX).queue();
+                
+                HifumiBot.getSelf().getEventListener().waitForMessage(cm.getUser().getId(), msg);
+            });
+        }
+    }
+    
+    /**
+     * Rank wiki titles against a query.
+     * @return Up to six titles, best match first.
+     */
+    private List<String> search(String[] args) {
+        List<String> titles = HifumiBot.getSelf().getWikiIndex().getAllTitles();
+        TopK topK = new TopK(MAX_RESULTS);
         
         // A basic weighting algorithm.
-        for (String name : HifumiBot.getSelf().getWikiIndex().getAllTitles()) {
+        for (int i = 0; i < titles.size(); i++) {
+            String name = titles.get(i);
             String[] nameParts = name.toLowerCase().trim().split(" ");
             float toPush = 0;
             
             // For each search term...
-            for (String arg : cm.getArgs()) {
+            for (String arg : args) {
                 boolean wasFullMatch = false;
                 // For each (space delimited) part of the name...
                 for (String namePart : nameParts) {
@@ -79,61 +142,19 @@ public class CommandWiki extends AbstractCommand {
                 }
             }
             
-            toPush -= 0.1 * Math.abs(nameParts.length - cm.getArgs().length);
+            toPush -= 0.1 * Math.abs(nameParts.length - args.length);
             
             if (toPush > 0)
-                results.put(name, toPush);
+                topK.offer(i, toPush);
         }
         
-        EmbedBuilder eb = new EmbedBuilder();
-        int i = 0;
+        ArrayList<String> ret = new ArrayList<String>();
         
-        if (results.size() > 0) {
-            eb.setTitle("Query Results");
-            String highestName = null;
-            float highestWeight = 0;
-            
-            while (!results.isEmpty() && i < 6) {
-                for (String name : results.keySet()) {
-                    if (results.get(name) > highestWeight) {
-                        highestName = name;
-                        highestWeight = results.get(name);
-                    }
-                }
-                
-                results.remove(highestName);
-                
-                eb.addField(String.valueOf(++i), highestName, false);
-                highestWeight = 0;
-            }
-            
-            eb.setFooter("Click the reaction number matching the game you are looking for.\nThis message will self-modify with it's wiki information.", HifumiBot.getSelf().getJDA().getSelfUser().getAvatarUrl());
-        } else {
-            eb.setTitle("No results matched your query!");
-            eb.setColor(0xff0000);
+        for (int i : topK.drain()) {
+            ret.add(titles.get(i));
         }
         
-        Message msg = HifumiBot.getSelf().sendMessage(cm.getChannel(), eb.build());
-        
-        if (eb.getFields().size() == 1) {
-            HifumiBot.getSelf().getEventListener().finalizeMessage(msg, eb.getFields().get(0).getValue(), cm.getUser().getId());
-        } else {
-            // String concatenation with unicodes is apparently punishable by build error, so we instead have this.
-            if (i > 0)
-                msg.addReaction(Emotes.ONE).complete();
-            if (i > 1)
-                msg.addReaction(Emotes.TWO).complete();
-            if (i > 2)
-                msg.addReaction(Emotes.THREE).complete();
-            if (i > 3)
-                msg.addReaction(Emotes.FOUR).complete();
-            if (i > 4)
-                msg.addReaction(Emotes.FIVE).complete();
-            if (i > 5)
-                msg.addReaction(Emotes.SIX).complete();
-            
-            HifumiBot.getSelf().getEventListener().waitForMessage(cm.getUser().getId(), msg);
-        }
+        return ret;
     }
     
     @Override
@@ -23,21 +23,190 @@
  */
 package io.github.redpanda4552.HifumiBot.config;
 
-import java.time.OffsetDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
 
-import io.github.redpanda4552.HifumiBot.command.DynamicCommand;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+@JsonAdapter(Config.AdapterFactory.class)
 public class Config {
     
-    public String systemOutputChannelId;
-    public ArrayList<DynamicCommand> dynamicCommands;
-    public HashMap<String, OffsetDateTime> warezUsers;
+    // Settings are volatile, since the config watcher copies edits into them
+    // while other threads read them
+    public volatile String systemOutputChannelId;
+    public DynamicCommandStore dynamicCommands;
+    public WarezUsers warezUsers;
+    public volatile int commandThreads;
+    public volatile int commandQueueCapacity;
+    public volatile int commandConcurrencyLimit;
+    public volatile int adminCommandThreads;
+    public volatile int adminCommandQueueCapacity;
+    public volatile long commandQueueDeadlineMillis;
+    public volatile int rateLimitUserBurst;
+    public volatile long rateLimitUserRefillMillis;
+    public volatile int rateLimitChannelBurst;
+    public volatile long rateLimitChannelRefillMillis;
+    public volatile int rateLimitCommandBurst;
+    public volatile long rateLimitCommandRefillMillis;
+    public volatile long statsWindowSeconds;
     
     public Config() {
         systemOutputChannelId = new String("");
-        dynamicCommands = new ArrayList<DynamicCommand>();
-        warezUsers = new HashMap<String, OffsetDateTime>();
+        dynamicCommands = new DynamicCommandStore();
+        warezUsers = new WarezUsers();
+        commandThreads = 8;
+        commandQueueCapacity = 64;
+        commandConcurrencyLimit = 4;
+        adminCommandThreads = 2;
+        adminCommandQueueCapacity = 16;
+        commandQueueDeadlineMillis = 15000;
+        rateLimitUserBurst = 5;
+        rateLimitUserRefillMillis = 4000;
+        rateLimitChannelBurst = 10;
+        rateLimitChannelRefillMillis = 1000;
+        rateLimitCommandBurst = 20;
+        rateLimitCommandRefillMillis = 250;
+        statsWindowSeconds = 300;
+    }
+    
+    /**
+     * Streams the config field by field. Anything missing from the file keeps
+     * its default, and anything unrecognized is skipped. New fields need
+     * adding to both read and write.
+     */
+    public static class AdapterFactory implements TypeAdapterFactory {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != Config.class)
+                return null;
+            
+            TypeAdapter<DynamicCommandStore> storeAdapter = gson.getAdapter(DynamicCommandStore.class);
+            TypeAdapter<WarezUsers> warezAdapter = gson.getAdapter(WarezUsers.class);
+            
+            return (TypeAdapter<T>) new TypeAdapter<Config>() {
+                @Override
+                public void write(JsonWriter out, Config config) throws IOException {
+                    if (config == null) {
+                        out.nullValue();
+                        return;
+                    }
+                    
+                    out.beginObject();
+                    
+                    if (config.systemOutputChannelId != null)
+                        out.name("systemOutputChannelId").value(config.systemOutputChannelId);
+                    
+                    if (config.dynamicCommands != null) {
+                        out.name("dynamicCommands");
+                        storeAdapter.write(out, config.dynamicCommands);
+                    }
+                    
+                    if (config.warezUsers != null) {
+                        out.name("warezUsers");
+                        warezAdapter.write(out, config.warezUsers);
+                    }
+                    
+                    out.name("commandThreads").value(config.commandThreads);
+                    out.name("commandQueueCapacity").value(config.commandQueueCapacity);
+                    out.name("commandConcurrencyLimit").value(config.commandConcurrencyLimit);
+                    out.name("adminCommandThreads").value(config.adminCommandThreads);
+                    out.name("adminCommandQueueCapacity").value(config.adminCommandQueueCapacity);
+                    out.name("commandQueueDeadlineMillis").value(config.commandQueueDeadlineMillis);
+                    out.name("rateLimitUserBurst").value(config.rateLimitUserBurst);
+                    out.name("rateLimitUserRefillMillis").value(config.rateLimitUserRefillMillis);
+                    out.name("rateLimitChannelBurst").value(config.rateLimitChannelBurst);
+                    out.name("rateLimitChannelRefillMillis").value(config.rateLimitChannelRefillMillis);
+                    out.name("rateLimitCommandBurst").value(config.rateLimitCommandBurst);
+                    out.name("rateLimitCommandRefillMillis").value(config.rateLimitCommandRefillMillis);
+                    out.name("statsWindowSeconds").value(config.statsWindowSeconds);
+                    out.endObject();
+                }
+                
+                @Override
+                public Config read(JsonReader in) throws IOException {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        return null;
+                    }
+                    
+                    Config config = new Config();
+                    in.beginObject();
+                    
+                    while (in.hasNext()) {
+                        String name = in.nextName();
+                        
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            continue;
+                        }
+                        
+                        switch (name) {
+                        case "systemOutputChannelId":
+                            config.systemOutputChannelId = in.nextString();
+                            break;
+                        case "dynamicCommands":
+                            config.dynamicCommands = storeAdapter.read(in);
+                            break;
+                        case "warezUsers":
+                            config.warezUsers = warezAdapter.read(in);
+                            break;
+                        case "commandThreads":
+                            config.commandThreads = in.nextInt();
+                            break;
+                        case "commandQueueCapacity":
+                            config.commandQueueCapacity = in.nextInt();
+                            break;
+                        case "commandConcurrencyLimit":
+                            config.commandConcurrencyLimit = in.nextInt();
+                            break;
+                        case "adminCommandThreads":
+                            config.adminCommandThreads = in.nextInt();
+                            break;
+                        case "adminCommandQueueCapacity":
+                            config.adminCommandQueueCapacity = in.nextInt();
+                            break;
+                        case "commandQueueDeadlineMillis":
+                            config.commandQueueDeadlineMillis = in.nextLong();
+                            break;
+                        case "rateLimitUserBurst":
+                            config.rateLimitUserBurst = in.nextInt();
+                            break;
+                        case "rateLimitUserRefillMillis":
+                            config.rateLimitUserRefillMillis = in.nextLong();
+                            break;
+                        case "rateLimitChannelBurst":
+                            config.rateLimitChannelBurst = in.nextInt();
+                            break;
+                        case "rateLimitChannelRefillMillis":
+                            config.rateLimitChannelRefillMillis = in.nextLong();
+                            break;
+                        case "rateLimitCommandBurst":
+                            config.rateLimitCommandBurst = in.nextInt();
+                            break;
+                        case "rateLimitCommandRefillMillis":
+                            config.rateLimitCommandRefillMillis = in.nextLong();
+                            break;
+                        case "statsWindowSeconds":
+                            config.statsWindowSeconds = in.nextLong();
+                            break;
+                        default:
+                            in.skipValue();
+                            break;
+                        }
+                    }
+                    
+                    in.endObject();
+                    return config;
+                }
+            };
+        }
     }
 }
@@ -26,16 +26,64 @@ package io.github.redpanda4552.HifumiBot.config;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import io.github.redpanda4552.HifumiBot.command.DynamicCommand;
+
+/**
+ * Changes to the config are saved by {@link #markDirty(Config)}, which
+ * leaves the write to a background thread. Bursts of changes made within
+ * {@value #WRITE_DELAY_MILLIS} ms of each other are saved together. Each
+ * write goes to a temporary file which is synced and then moved over the
+ * config, so a crash mid-write never leaves a truncated config behind.
+ * <p>
+ * Reading and writing stream straight between the file and the config's
+ * adapters, without holding the whole document in memory as a string.
+ */
 public class ConfigManager {
 
     private static final String CONFIG_PATH = "./hifumi-conf.json";
+    private static final long WRITE_DELAY_MILLIS = 2000;
     public static final File file = new File(CONFIG_PATH);
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean dirty = new AtomicBoolean();
+    private static volatile Config pending;
+    // Digest of the file as we last wrote or loaded it, guarded by the class
+    private static byte[] lastDigest;
+    // Dynamic commands as of that same file, guarded by the class
+    private static List<DynamicCommand> lastCommands = Collections.emptyList();
     
     public static void createConfigIfNotExists() {
         try {
@@ -49,11 +97,11 @@ public class ConfigManager {
     }
     
     public static Config read() {
-        try {
-            InputStream iStream = Files.newInputStream(file.toPath());
-            String json = new String(iStream.readAllBytes());
-            Gson gson = new Gson();
-            return gson.fromJson(json, Config.class);
+        // Replace anything which can't be decoded, like new String(byte[]) would
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        
+        try (JsonReader reader = gson.newJsonReader(Channels.newReader(FileChannel.open(file.toPath(), StandardOpenOption.READ), decoder, -1))) {
+            return gson.fromJson(reader, Config.class);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -61,14 +109,158 @@ public class ConfigManager {
         return null;
     }
     
-    public static void write(Config config) {
+    /**
+     * Schedule the config to be written, unless a write is already pending.
+     */
+    public static void markDirty(Config config) {
+        pending = config;
+        
+        if (dirty.compareAndSet(false, true))
+            writer.schedule(ConfigManager::flush, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Write the config now if there are changes waiting to be written. Call
+     * before shutting down so that nothing is lost.
+     */
+    public static synchronized void flush() {
+        // Clear first, so a change made while writing schedules another write
+        if (!dirty.getAndSet(false))
+            return;
+        
+        boolean written = false;
+        
+        try {
+            written = write(pending);
+        } catch (RuntimeException e) {
+            // Would otherwise vanish into the writer's ScheduledFuture
+            e.printStackTrace();
+        } finally {
+            if (!written) {
+                System.out.println("Failed to write config, will try again");
+                markDirty(pending);
+            }
+        }
+    }
+    
+    /**
+     * Read the config, unless the file is exactly as it was when last written
+     * or read through here. Used to tell the bot's own writes apart from
+     * edits made by someone else.
+     * @return The config, or null if it has not changed or could not be read.
+     */
+    public static synchronized Config readIfChanged() {
+        try {
+            byte[] current = digestFile();
+            
+            if (Arrays.equals(current, lastDigest))
+                return null;
+            
+            lastDigest = current;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        
+        Config config = read();
+        
+        if (config != null)
+            lastCommands = Collections.unmodifiableList(config.dynamicCommands.values());
+        
+        return config;
+    }
+    
+    /**
+     * Write the config immediately, replacing the file in one atomic move.
+     * @return True if the config was written.
+     */
+    public static synchronized boolean write(Config config) {
+        Path path = file.toPath();
+        Path temp = path.resolveSibling(file.getName() + ".tmp");
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        
+        // Taken before serializing, so it never has a command the file lacks
+        List<DynamicCommand> commands = config.dynamicCommands.values();
+        
+        try {
+            MessageDigest digest = newDigest();
+            
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(new DigestOutputStream(Channels.newOutputStream(channel), digest), encoder));
+                gson.toJson(config, Config.class, writer);
+                writer.flush();
+                channel.force(true);
+            }
+            
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            lastDigest = digest.digest();
+            lastCommands = Collections.unmodifiableList(commands);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return The dynamic commands as they were in the file when it was last
+     * written or read through here. Changes made since then may not have been
+     * written yet.
+     */
+    public static synchronized List<DynamicCommand> getLastCommands() {
+        return lastCommands;
+    }
+    
+    /**
+     * @return A digest of the file as it is now, or null if it could not be
+     * read.
+     */
+    public static String getFileDigest() {
         try {
-            OutputStream oStream = Files.newOutputStream(file.toPath());
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            String json = gson.toJson(config);
-            oStream.write(json.getBytes());
+            return toHex(digestFile());
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * @return A digest of the file as it was last written or read through
+     * here, or null if it hasn't been yet.
+     */
+    public static synchronized String getLastDigest() {
+        return lastDigest != null ? toHex(lastDigest) : null;
+    }
+    
+    private static byte[] digestFile() throws IOException {
+        MessageDigest digest = newDigest();
+        
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            byte[] buf = new byte[8192];
+            
+            while (in.read(buf) != -1);
+        }
+        
+        return digest.digest();
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        
+        return sb.toString();
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
         }
     }
 }
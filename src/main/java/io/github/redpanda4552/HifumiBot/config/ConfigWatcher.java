@@ -0,0 +1,188 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+
+import io.github.redpanda4552.HifumiBot.HifumiBot;
+import io.github.redpanda4552.HifumiBot.PermissionManager;
+import io.github.redpanda4552.HifumiBot.command.CommandIndex;
+import io.github.redpanda4552.HifumiBot.command.DynamicCommand;
+import io.github.redpanda4552.HifumiBot.util.Messaging;
+
+/**
+ * Watches the config and admins.txt, and applies edits to them as they are
+ * saved, without a full reload. Only what changed is applied; dynamic
+ * commands go through the CommandIndex one at a time. Executor, rate limit
+ * and statistics settings are only read at startup, so still need a reload.
+ * <p>
+ * Warez users are left alone. They are kept by the warez journal, and the
+ * copy in the config file may be behind.
+ */
+public class ConfigWatcher implements Runnable {
+
+    // Editors often save in several steps, so let the events settle first
+    private static final long SETTLE_MILLIS = 100;
+    
+    private WatchService watchService;
+    private Path configName, adminsName;
+    
+    public ConfigWatcher() throws IOException {
+        Path dir = ConfigManager.file.toPath().toAbsolutePath().getParent();
+        configName = ConfigManager.file.toPath().getFileName();
+        adminsName = Paths.get(PermissionManager.ADMINS_PATH).getFileName();
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        
+        Thread thread = new Thread(this, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(SETTLE_MILLIS);
+                boolean config = false, admins = false;
+                
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            config = admins = true;
+                        } else if (configName.equals(event.context())) {
+                            config = true;
+                        } else if (adminsName.equals(event.context())) {
+                            admins = true;
+                        }
+                    }
+                    
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+                
+                if (config)
+                    reloadConfig();
+                
+                if (admins)
+                    reloadAdmins();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+    
+    private void reloadConfig() {
+        try {
+            // Diffed against the file as we last knew it, not the live store,
+            // since changes made in the last few seconds may not be written
+            // yet and would look like deletions
+            HashMap<String, DynamicCommand> previous = new HashMap<String, DynamicCommand>();
+            
+            for (DynamicCommand command : ConfigManager.getLastCommands()) {
+                previous.put(command.getName(), command);
+            }
+            
+            Config fresh = ConfigManager.readIfChanged();
+            
+            // Unchanged since we wrote it, or not valid yet
+            if (fresh == null)
+                return;
+            
+            Config live = HifumiBot.getSelf().getConfig();
+            CommandIndex commandIndex = HifumiBot.getSelf().getCommandIndex();
+            int updated = 0, removed = 0;
+            
+            for (DynamicCommand command : fresh.dynamicCommands.values()) {
+                DynamicCommand before = previous.remove(command.getName());
+                DynamicCommand current = live.dynamicCommands.get(command.getName());
+                
+                // Not edited in the file, or already matching
+                if ((before != null && before.contentEquals(command)) || (current != null && current.contentEquals(command)))
+                    continue;
+                
+                if (commandIndex.isCommand(command.getName()) && !commandIndex.isDynamicCommand(command.getName())) {
+                    System.out.println("Ignoring dynamic command " + command.getName() + " from config, a builtin has that name");
+                    continue;
+                }
+                
+                commandIndex.addCommand(command);
+                updated++;
+            }
+            
+            // Whatever is left was in the file before and has been taken out
+            for (DynamicCommand before : previous.values()) {
+                if (live.dynamicCommands.get(before.getName()) != null) {
+                    commandIndex.deleteCommand(before.getName());
+                    removed++;
+                }
+            }
+            
+            // Only the system output channel applies straight away, the rest
+            // after a reload. They are all copied across so the next write of
+            // the config doesn't undo the edit; the fields are volatile, so
+            // other threads see them.
+            live.systemOutputChannelId = fresh.systemOutputChannelId;
+            live.commandThreads = fresh.commandThreads;
+            live.commandQueueCapacity = fresh.commandQueueCapacity;
+            live.commandConcurrencyLimit = fresh.commandConcurrencyLimit;
+            live.adminCommandThreads = fresh.adminCommandThreads;
+            live.adminCommandQueueCapacity = fresh.adminCommandQueueCapacity;
+            live.commandQueueDeadlineMillis = fresh.commandQueueDeadlineMillis;
+            live.rateLimitUserBurst = fresh.rateLimitUserBurst;
+            live.rateLimitUserRefillMillis = fresh.rateLimitUserRefillMillis;
+            live.rateLimitChannelBurst = fresh.rateLimitChannelBurst;
+            live.rateLimitChannelRefillMillis = fresh.rateLimitChannelRefillMillis;
+            live.rateLimitCommandBurst = fresh.rateLimitCommandBurst;
+            live.rateLimitCommandRefillMillis = fresh.rateLimitCommandRefillMillis;
+            live.statsWindowSeconds = fresh.statsWindowSeconds;
+            
+            System.out.println("Config reloaded, " + updated + " dynamic commands added or changed, " + removed + " removed");
+        } catch (RuntimeException e) {
+            // Most likely a half saved or malformed file, wait for the next save
+            Messaging.sendErrorToSystemOutputChannel("ConfigWatcher", "reloadConfig", e);
+        }
+    }
+    
+    private void reloadAdmins() {
+        if (HifumiBot.getSelf().getPermissionManager().reload())
+            System.out.println("Admin roles reloaded");
+    }
+    
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import io.github.redpanda4552.HifumiBot.command.DynamicCommand;
+
+/**
+ * Dynamic commands keyed by name, in the order they were first added.
+ * Lookups, upserts and deletes are constant time. Serializes as a plain JSON
+ * array of commands, the same as the list this replaced, so existing config
+ * files load unchanged.
+ */
+@JsonAdapter(DynamicCommandStore.AdapterFactory.class)
+public class DynamicCommandStore {
+
+    private LinkedHashMap<String, DynamicCommand> commands = new LinkedHashMap<String, DynamicCommand>();
+    
+    public synchronized DynamicCommand get(String name) {
+        return commands.get(name);
+    }
+    
+    /**
+     * Add a command, or replace the command with the same name. A replaced
+     * command keeps its position.
+     * @return The command replaced, or null if there was none.
+     */
+    public synchronized DynamicCommand put(DynamicCommand command) {
+        return commands.put(command.getName(), command);
+    }
+    
+    /**
+     * @return The command removed, or null if there was none by that name.
+     */
+    public synchronized DynamicCommand remove(String name) {
+        return commands.remove(name);
+    }
+    
+    public synchronized int size() {
+        return commands.size();
+    }
+    
+    /**
+     * @return A copy of every command, safe to iterate while the store is
+     * being modified.
+     */
+    public synchronized List<DynamicCommand> values() {
+        return new ArrayList<DynamicCommand>(commands.values());
+    }
+    
+    /**
+     * Reads and writes the store as a JSON array, leaving each command to
+     * whatever adapter Gson would otherwise use for it.
+     */
+    public static class AdapterFactory implements TypeAdapterFactory {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != DynamicCommandStore.class)
+                return null;
+            
+            TypeAdapter<DynamicCommand> commandAdapter = gson.getAdapter(DynamicCommand.class);
+            
+            return (TypeAdapter<T>) new TypeAdapter<DynamicCommandStore>() {
+                @Override
+                public void write(JsonWriter out, DynamicCommandStore store) throws IOException {
+                    if (store == null) {
+                        out.nullValue();
+                        return;
+                    }
+                    
+                    out.beginArray();
+                    
+                    for (DynamicCommand command : store.values()) {
+                        commandAdapter.write(out, command);
+                    }
+                    
+                    out.endArray();
+                }
+                
+                @Override
+                public DynamicCommandStore read(JsonReader in) throws IOException {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        return null;
+                    }
+                    
+                    DynamicCommandStore store = new DynamicCommandStore();
+                    in.beginArray();
+                    
+                    while (in.hasNext()) {
+                        DynamicCommand command = commandAdapter.read(in);
+                        
+                        if (command != null)
+                            store.put(command);
+                    }
+                    
+                    in.endArray();
+                    return store;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.config;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes an OffsetDateTime in the nested form Gson produced by
+ * reflecting over it, which is what existing configs contain. An ISO-8601
+ * string is also accepted when reading.
+ */
+public class OffsetDateTimeAdapter extends TypeAdapter<OffsetDateTime> {
+
+    @Override
+    public void write(JsonWriter out, OffsetDateTime value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        
+        out.beginObject();
+        out.name("dateTime").beginObject();
+        out.name("date").beginObject();
+        out.name("year").value(value.getYear());
+        out.name("month").value(value.getMonthValue());
+        out.name("day").value(value.getDayOfMonth());
+        out.endObject();
+        out.name("time").beginObject();
+        out.name("hour").value(value.getHour());
+        out.name("minute").value(value.getMinute());
+        out.name("second").value(value.getSecond());
+        out.name("nano").value(value.getNano());
+        out.endObject();
+        out.endObject();
+        out.name("offset").beginObject();
+        out.name("totalSeconds").value(value.getOffset().getTotalSeconds());
+        out.endObject();
+        out.endObject();
+    }
+    
+    @Override
+    public OffsetDateTime read(JsonReader in) throws IOException {
+        switch (in.peek()) {
+        case NULL:
+            in.nextNull();
+            return null;
+        case STRING:
+            return OffsetDateTime.parse(in.nextString());
+        default:
+            break;
+        }
+        
+        // Anything missing is left at zero, or one for the month and day
+        int[] fields = new int[8];
+        fields[1] = fields[2] = 1;
+        in.beginObject();
+        
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "dateTime":
+                in.beginObject();
+                
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                    case "date":
+                        readFields(in, fields, 0, "year", "month", "day");
+                        break;
+                    case "time":
+                        readFields(in, fields, 3, "hour", "minute", "second", "nano");
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                    }
+                }
+                
+                in.endObject();
+                break;
+            case "offset":
+                readFields(in, fields, 7, "totalSeconds");
+                break;
+            default:
+                in.skipValue();
+                break;
+            }
+        }
+        
+        in.endObject();
+        
+        try {
+            return OffsetDateTime.of(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6], ZoneOffset.ofTotalSeconds(fields[7]));
+        } catch (RuntimeException e) {
+            throw new JsonParseException("Invalid date at " + in.getPath(), e);
+        }
+    }
+    
+    private static void readFields(JsonReader in, int[] fields, int offset, String... names) throws IOException {
+        in.beginObject();
+        
+        while (in.hasNext()) {
+            String name = in.nextName();
+            int i = 0;
+            
+            while (i < names.length && !names[i].equals(name))
+                i++;
+            
+            if (i < names.length && in.peek() != JsonToken.NULL)
+                fields[offset + i] = in.nextInt();
+            else
+                in.skipValue();
+        }
+        
+        in.endObject();
+    }
+}
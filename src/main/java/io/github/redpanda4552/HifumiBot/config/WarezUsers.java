@@ -0,0 +1,413 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.config;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Warez'd users, as user id to the epoch second they were warez'd. Entries
+ * are kept in flat long arrays with open addressing, so each costs a few
+ * dozen bytes rather than a String and an OffsetDateTime, and a lookup is a
+ * hash and a short probe however many users there are.
+ * <p>
+ * The table is split into stripes, each with its own lock, so updates to
+ * different users rarely contend. Lookups are optimistic and only take a
+ * lock if they raced with an update.
+ * <p>
+ * Serializes as the same JSON object of user id to date that the map this
+ * replaced produced. Dates are written in UTC.
+ */
+@JsonAdapter(WarezUsers.Adapter.class)
+public class WarezUsers {
+
+    /**
+     * Returned by {@link #get(long)} for a user who is not warez'd.
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+    
+    public interface Visitor {
+        void accept(long userId, long epochSecond);
+    }
+    
+    private static final int STRIPE_BITS = 4;
+    private static final int INITIAL_SLOTS = 16;
+    
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+    
+    public WarezUsers() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+    
+    /**
+     * @return When the user was warez'd, in epoch seconds, or
+     * {@link #MISSING}.
+     */
+    public long get(long userId) {
+        long hash = hash(userId);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        long value = stripe.find(userId, hash);
+        
+        if (!stripe.lock.validate(stamp)) {
+            stamp = stripe.lock.readLock();
+            
+            try {
+                value = stripe.find(userId, hash);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        
+        return value;
+    }
+    
+    public boolean contains(long userId) {
+        return get(userId) != MISSING;
+    }
+    
+    public void put(long userId, long epochSecond) {
+        long hash = hash(userId);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        
+        try {
+            stripe.put(userId, hash, epochSecond, true);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * @return True if the user was added, false if they were already
+     * present, in which case nothing is changed.
+     */
+    public boolean putIfAbsent(long userId, long epochSecond) {
+        long hash = hash(userId);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        
+        try {
+            return stripe.put(userId, hash, epochSecond, false);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * @return True if the user was present.
+     */
+    public boolean remove(long userId) {
+        long hash = hash(userId);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        
+        try {
+            return stripe.remove(userId, hash);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+    
+    public int size() {
+        int size = 0;
+        
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        
+        return size;
+    }
+    
+    /**
+     * Visit every user. Each stripe is locked while it is visited, so the
+     * visitor must not modify this.
+     */
+    public void forEach(Visitor visitor) {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            
+            try {
+                long[] table = stripe.table;
+                
+                for (int i = 0; i < table.length; i += 2) {
+                    if (table[i] != 0)
+                        visitor.accept(table[i], table[i + 1]);
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+    }
+    
+    /**
+     * @return Every user, as user id and epoch second pairs one after the
+     * other.
+     */
+    public long[] toArray() {
+        long[] entries = new long[0];
+        int count = 0;
+        
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            
+            try {
+                long[] table = stripe.table;
+                
+                if (entries.length < count + stripe.size * 2)
+                    entries = Arrays.copyOf(entries, count + stripe.size * 2);
+                
+                for (int i = 0; i < table.length; i += 2) {
+                    if (table[i] != 0) {
+                        entries[count++] = table[i];
+                        entries[count++] = table[i + 1];
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        
+        return entries;
+    }
+    
+    public WarezUsers copy() {
+        WarezUsers copy = new WarezUsers();
+        forEach(copy::put);
+        return copy;
+    }
+    
+    private Stripe stripeFor(long hash) {
+        return stripes[(int) (hash >>> (Long.SIZE - STRIPE_BITS))];
+    }
+    
+    // Snowflakes are sequential in their high bits, so mix them up first
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+    
+    /**
+     * One lock's share of the users. Keys and values are interleaved in a
+     * single array, so an optimistic reader always sees a key and value from
+     * the same table. A key of 0 marks an empty slot; no snowflake is 0.
+     */
+    private static class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+        private long[] table = new long[INITIAL_SLOTS * 2];
+        private int size;
+        
+        private long find(long key, long hash) {
+            // 0 would match an empty slot
+            if (key == 0)
+                return MISSING;
+            
+            long[] table = this.table;
+            int mask = (table.length >> 1) - 1;
+            int slot = (int) hash & mask;
+            
+            // Bounded, since an optimistic reader may see a table mid-update
+            for (int probes = 0; probes <= mask; probes++) {
+                long current = table[slot << 1];
+                
+                if (current == key)
+                    return table[(slot << 1) + 1];
+                
+                if (current == 0)
+                    break;
+                
+                slot = (slot + 1) & mask;
+            }
+            
+            return MISSING;
+        }
+        
+        private boolean put(long key, long hash, long value, boolean replace) {
+            if (key == 0)
+                throw new IllegalArgumentException("User id 0 is not a valid snowflake");
+            
+            int mask = (table.length >> 1) - 1;
+            int slot = (int) hash & mask;
+            
+            while (true) {
+                long current = table[slot << 1];
+                
+                if (current == key) {
+                    if (replace)
+                        table[(slot << 1) + 1] = value;
+                    
+                    return false;
+                }
+                
+                if (current == 0)
+                    break;
+                
+                slot = (slot + 1) & mask;
+            }
+            
+            table[(slot << 1) + 1] = value;
+            table[slot << 1] = key;
+            
+            // Keep at most three quarters full, so probes stay short
+            if (++size * 4 > (mask + 1) * 3)
+                grow();
+            
+            return true;
+        }
+        
+        private boolean remove(long key, long hash) {
+            int mask = (table.length >> 1) - 1;
+            int slot = (int) hash & mask;
+            
+            while (true) {
+                long current = table[slot << 1];
+                
+                if (current == 0)
+                    return false;
+                
+                if (current == key)
+                    break;
+                
+                slot = (slot + 1) & mask;
+            }
+            
+            // Shift later entries of the same probe run back over the gap,
+            // rather than leaving a tombstone
+            int next = (slot + 1) & mask;
+            
+            while (table[next << 1] != 0) {
+                int ideal = (int) hash(table[next << 1]) & mask;
+                
+                if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+                    table[slot << 1] = table[next << 1];
+                    table[(slot << 1) + 1] = table[(next << 1) + 1];
+                    slot = next;
+                }
+                
+                next = (next + 1) & mask;
+            }
+            
+            table[slot << 1] = 0;
+            size--;
+            return true;
+        }
+        
+        private void grow() {
+            long[] old = table;
+            long[] grown = new long[old.length * 2];
+            int mask = (grown.length >> 1) - 1;
+            
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] == 0)
+                    continue;
+                
+                int slot = (int) hash(old[i]) & mask;
+                
+                while (grown[slot << 1] != 0)
+                    slot = (slot + 1) & mask;
+                
+                grown[slot << 1] = old[i];
+                grown[(slot << 1) + 1] = old[i + 1];
+            }
+            
+            table = grown;
+        }
+    }
+    
+    /**
+     * Reads and writes the users as a JSON object of user id to date.
+     */
+    public static class Adapter extends TypeAdapter<WarezUsers> {
+
+        private OffsetDateTimeAdapter dateAdapter = new OffsetDateTimeAdapter();
+        
+        @Override
+        public void write(JsonWriter out, WarezUsers warezUsers) throws IOException {
+            if (warezUsers == null) {
+                out.nullValue();
+                return;
+            }
+            
+            // Copied out first, so no lock is held while writing
+            long[] entries = warezUsers.toArray();
+            out.beginObject();
+            
+            for (int i = 0; i < entries.length; i += 2) {
+                out.name(Long.toString(entries[i]));
+                dateAdapter.write(out, OffsetDateTime.ofInstant(Instant.ofEpochSecond(entries[i + 1]), ZoneOffset.UTC));
+            }
+            
+            out.endObject();
+        }
+        
+        @Override
+        public WarezUsers read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            
+            WarezUsers warezUsers = new WarezUsers();
+            in.beginObject();
+            
+            while (in.hasNext()) {
+                String userId = in.nextName();
+                OffsetDateTime warezTime = dateAdapter.read(in);
+                
+                try {
+                    if (warezTime != null)
+                        warezUsers.put(Long.parseLong(userId), warezTime.toEpochSecond());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Skipping warez user with invalid id " + userId);
+                }
+            }
+            
+            in.endObject();
+            return warezUsers;
+        }
+    }
+}
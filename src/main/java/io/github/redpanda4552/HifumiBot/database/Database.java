@@ -0,0 +1,270 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+
+import io.github.redpanda4552.HifumiBot.command.DynamicCommand;
+import io.github.redpanda4552.HifumiBot.config.Config;
+import io.github.redpanda4552.HifumiBot.config.DynamicCommandStore;
+import io.github.redpanda4552.HifumiBot.config.WarezUsers;
+
+/**
+ * SQLite storage for warez users and dynamic commands. Each change is a
+ * single row upsert or delete, rather than a rewrite of the whole config.
+ * Warez users are normally written through a {@link WarezJournal}, which
+ * only snapshots them here when it compacts.
+ * <p>
+ * On first start the contents of the JSON config are copied in, after which
+ * the database is the authority for both tables. If the JSON config's dynamic
+ * commands are edited while the bot is down, a changed digest of the file
+ * tells startup to take them up again.
+ */
+public class Database {
+
+    private static final String DATABASE_PATH = "./hifumi.db";
+    private static final String JSON_MIGRATED = "json_migrated";
+    private static final String JSON_DIGEST = "json_digest";
+    
+    private Connection connection;
+    private PreparedStatement upsertWarezUser, deleteWarezUser, upsertDynamicCommand, deleteDynamicCommand;
+    
+    public Database() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + DATABASE_PATH);
+        
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            // With WAL, NORMAL only risks the last few commits on power loss, never corruption
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS meta (key TEXT PRIMARY KEY, value TEXT)");
+            statement.execute("CREATE TABLE IF NOT EXISTS warez_users (user_id TEXT PRIMARY KEY, warez_time INTEGER NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS dynamic_commands (name TEXT PRIMARY KEY, position INTEGER NOT NULL, category TEXT, admin INTEGER NOT NULL, help_text TEXT, title TEXT, body TEXT, image_url TEXT)");
+        }
+        
+        upsertWarezUser = connection.prepareStatement("INSERT OR REPLACE INTO warez_users (user_id, warez_time) VALUES (?, ?)");
+        deleteWarezUser = connection.prepareStatement("DELETE FROM warez_users WHERE user_id = ?");
+        // A replaced command keeps its position, a new one goes on the end
+        upsertDynamicCommand = connection.prepareStatement("INSERT OR REPLACE INTO dynamic_commands (name, position, category, admin, help_text, title, body, image_url) VALUES (?, COALESCE((SELECT position FROM dynamic_commands WHERE name = ?), (SELECT IFNULL(MAX(position), 0) + 1 FROM dynamic_commands)), ?, ?, ?, ?, ?, ?)");
+        deleteDynamicCommand = connection.prepareStatement("DELETE FROM dynamic_commands WHERE name = ?");
+    }
+    
+    /**
+     * Copy the warez users and dynamic commands out of the JSON config, if
+     * that has not already been done.
+     * @return True if anything was migrated.
+     */
+    public synchronized boolean migrate(Config config) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT value FROM meta WHERE key = ?")) {
+            select.setString(1, JSON_MIGRATED);
+            
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next())
+                    return false;
+            }
+        }
+        
+        connection.setAutoCommit(false);
+        
+        try {
+            long[] warezUsers = config.warezUsers.toArray();
+            
+            for (int i = 0; i < warezUsers.length; i += 2) {
+                bindWarezUser(warezUsers[i], warezUsers[i + 1]);
+                upsertWarezUser.executeUpdate();
+            }
+            
+            for (DynamicCommand command : config.dynamicCommands.values()) {
+                bindDynamicCommand(command);
+                upsertDynamicCommand.executeUpdate();
+            }
+            
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO meta (key, value) VALUES (?, ?)")) {
+                insert.setString(1, JSON_MIGRATED);
+                insert.setString(2, OffsetDateTime.now().toString());
+                insert.executeUpdate();
+            }
+            
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        
+        System.out.println("Migrated " + config.warezUsers.size() + " warez users and " + config.dynamicCommands.size() + " dynamic commands from JSON config");
+        return true;
+    }
+    
+    /**
+     * @return The digest recorded by {@link #setJsonDigest(String)}, or null.
+     */
+    public synchronized String getJsonDigest() throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT value FROM meta WHERE key = ?")) {
+            select.setString(1, JSON_DIGEST);
+            
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+    
+    /**
+     * Record the digest of the JSON config as the bot last wrote or read it,
+     * so that edits made while the bot was down can be noticed on startup.
+     */
+    public synchronized void setJsonDigest(String digest) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement("INSERT OR REPLACE INTO meta (key, value) VALUES (?, ?)")) {
+            upsert.setString(1, JSON_DIGEST);
+            upsert.setString(2, digest);
+            upsert.executeUpdate();
+        }
+    }
+    
+    public synchronized WarezUsers getWarezUsers() throws SQLException {
+        WarezUsers ret = new WarezUsers();
+        
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("SELECT user_id, warez_time FROM warez_users")) {
+            while (rs.next())
+                ret.put(Long.parseLong(rs.getString(1)), rs.getLong(2));
+        }
+        
+        return ret;
+    }
+    
+    public synchronized DynamicCommandStore getDynamicCommands() throws SQLException {
+        DynamicCommandStore ret = new DynamicCommandStore();
+        
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("SELECT name, category, admin, help_text, title, body, image_url FROM dynamic_commands ORDER BY position")) {
+            while (rs.next())
+                ret.put(new DynamicCommand(rs.getString(1), rs.getString(2), rs.getBoolean(3), rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7)));
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * Replace every warez user in one transaction.
+     */
+    public synchronized void replaceWarezUsers(WarezUsers warezUsers) throws SQLException {
+        connection.setAutoCommit(false);
+        
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM warez_users");
+            }
+            
+            long[] entries = warezUsers.toArray();
+            
+            for (int i = 0; i < entries.length; i += 2) {
+                bindWarezUser(entries[i], entries[i + 1]);
+                upsertWarezUser.addBatch();
+            }
+            
+            upsertWarezUser.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+    
+    /**
+     * Replace every dynamic command in one transaction, keeping the store's
+     * order.
+     */
+    public synchronized void replaceDynamicCommands(DynamicCommandStore dynamicCommands) throws SQLException {
+        connection.setAutoCommit(false);
+        
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM dynamic_commands");
+            }
+            
+            for (DynamicCommand command : dynamicCommands.values()) {
+                bindDynamicCommand(command);
+                upsertDynamicCommand.executeUpdate();
+            }
+            
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+    
+    public synchronized void putWarezUser(long userId, long epochSecond) throws SQLException {
+        bindWarezUser(userId, epochSecond);
+        upsertWarezUser.executeUpdate();
+    }
+    
+    public synchronized void removeWarezUser(long userId) throws SQLException {
+        deleteWarezUser.setString(1, Long.toString(userId));
+        deleteWarezUser.executeUpdate();
+    }
+    
+    public synchronized void putDynamicCommand(DynamicCommand command) throws SQLException {
+        bindDynamicCommand(command);
+        upsertDynamicCommand.executeUpdate();
+    }
+    
+    public synchronized void removeDynamicCommand(String name) throws SQLException {
+        deleteDynamicCommand.setString(1, name);
+        deleteDynamicCommand.executeUpdate();
+    }
+    
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void bindWarezUser(long userId, long epochSecond) throws SQLException {
+        upsertWarezUser.setString(1, Long.toString(userId));
+        upsertWarezUser.setLong(2, epochSecond);
+    }
+    
+    private void bindDynamicCommand(DynamicCommand command) throws SQLException {
+        upsertDynamicCommand.setString(1, command.getName());
+        upsertDynamicCommand.setString(2, command.getName());
+        upsertDynamicCommand.setString(3, command.getCategory());
+        upsertDynamicCommand.setBoolean(4, command.isAdminCommand());
+        upsertDynamicCommand.setString(5, command.getHelpText());
+        upsertDynamicCommand.setString(6, command.getTitle());
+        upsertDynamicCommand.setString(7, command.getBody());
+        upsertDynamicCommand.setString(8, command.getImageURL());
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import io.github.redpanda4552.HifumiBot.config.WarezUsers;
+
+/**
+ * Append-only journal of warez role changes, so that each change costs one
+ * fixed size record rather than a write of every warez user. The state on
+ * disk is the last snapshot with the journal replayed over it.
+ * <p>
+ * Callers wait until their record is synced to disk. Records appended while
+ * a sync is in progress are written and synced together by whichever caller
+ * gets there next, so a burst of changes shares a handful of syncs.
+ * <p>
+ * Compaction writes the current state as a new snapshot, then drops the
+ * records it covers. Replaying a record over a snapshot taken after it
+ * gives the same result, so a crash part way through loses nothing.
+ */
+public class WarezJournal {
+
+    /**
+     * Writes a complete snapshot of the warez users somewhere durable.
+     */
+    public interface Snapshotter {
+        void write(WarezUsers warezUsers) throws Exception;
+    }
+    
+    private static final String JOURNAL_PATH = "./warez.journal";
+    private static final byte OP_ADD = 1, OP_REMOVE = 2;
+    // Op, user id, epoch seconds
+    private static final int RECORD_BYTES = 1 + Long.BYTES + Long.BYTES;
+    private static final int COMPACT_THRESHOLD = 1024;
+    
+    private Path path = Paths.get(JOURNAL_PATH);
+    private FileChannel channel;
+    // Records appended but not yet written, guarded by this
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_BYTES * 64);
+    private long appended;
+    // Guards the channel, held for the duration of a write and sync
+    private final Object syncLock = new Object();
+    private long synced;
+    
+    public WarezJournal() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+    
+    /**
+     * Apply every complete record in the journal to a snapshot. A torn record
+     * at the end, from a crash mid-append, is discarded.
+     */
+    public void replay(WarezUsers warezUsers) throws IOException {
+        synchronized (syncLock) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            long position = 0, records = 0;
+            channel.position(0);
+            
+            while (true) {
+                record.clear();
+                
+                while (record.hasRemaining() && channel.read(record) >= 0);
+                
+                if (record.hasRemaining())
+                    break;
+                
+                record.flip();
+                byte op = record.get();
+                long userId = record.getLong();
+                long epochSecond = record.getLong();
+                
+                if (op == OP_ADD)
+                    warezUsers.put(userId, epochSecond);
+                else if (op == OP_REMOVE)
+                    warezUsers.remove(userId);
+                
+                position += RECORD_BYTES;
+                records++;
+            }
+            
+            if (channel.size() > position) {
+                System.out.println("Discarding " + (channel.size() - position) + " bytes of incomplete warez journal record");
+                channel.truncate(position);
+            }
+            
+            channel.position(position);
+            
+            if (records > 0)
+                System.out.println("Replayed " + records + " warez journal records");
+        }
+    }
+    
+    public void add(long userId, long epochSecond) throws IOException {
+        append(OP_ADD, userId, epochSecond);
+    }
+    
+    public void remove(long userId) throws IOException {
+        append(OP_REMOVE, userId, 0);
+    }
+    
+    private void append(byte op, long userId, long epochSecond) throws IOException {
+        long sequence;
+        
+        synchronized (this) {
+            if (pending.remaining() < RECORD_BYTES) {
+                ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            
+            pending.put(op).putLong(userId).putLong(epochSecond);
+            sequence = ++appended;
+        }
+        
+        synchronized (syncLock) {
+            // Someone else may have synced this record while we waited
+            if (synced < sequence)
+                sync();
+        }
+    }
+    
+    /**
+     * Write and sync everything pending. Must hold syncLock.
+     */
+    private void sync() throws IOException {
+        ByteBuffer batch;
+        long sequence;
+        
+        synchronized (this) {
+            pending.flip();
+            batch = ByteBuffer.allocate(pending.remaining());
+            batch.put(pending).flip();
+            pending.clear();
+            sequence = appended;
+        }
+        
+        while (batch.hasRemaining())
+            channel.write(batch);
+        
+        channel.force(false);
+        synced = sequence;
+    }
+    
+    public long getRecordCount() throws IOException {
+        synchronized (syncLock) {
+            return channel.size() / RECORD_BYTES;
+        }
+    }
+    
+    /**
+     * Snapshot the warez users and drop the journal records the snapshot
+     * covers, if the journal has grown large enough to be worth it.
+     * @param warezUsers - The live warez users, which every record appended
+     * so far has already been applied to
+     */
+    public void compactIfNeeded(WarezUsers warezUsers, Snapshotter snapshotter) throws Exception {
+        if (getRecordCount() < COMPACT_THRESHOLD)
+            return;
+        
+        long cut;
+        WarezUsers snapshot;
+        
+        synchronized (syncLock) {
+            sync();
+            cut = channel.position();
+            // Taken after the cut, so it covers at least every record before it
+            snapshot = warezUsers.copy();
+        }
+        
+        snapshotter.write(snapshot);
+        
+        synchronized (syncLock) {
+            sync();
+            long size = channel.position();
+            ByteBuffer tail = ByteBuffer.allocate((int) (size - cut));
+            
+            while (tail.hasRemaining() && channel.read(tail, cut + tail.position()) >= 0);
+            
+            tail.flip();
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            
+            try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (tail.hasRemaining())
+                    tempChannel.write(tail);
+                
+                tempChannel.force(false);
+            }
+            
+            channel.close();
+            
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                // If the move failed the old journal is still whole, so carry on with it
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            
+            System.out.println("Compacted warez journal, " + (cut / RECORD_BYTES) + " records dropped");
+        }
+    }
+    
+    public void close() {
+        synchronized (syncLock) {
+            try {
+                sync();
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
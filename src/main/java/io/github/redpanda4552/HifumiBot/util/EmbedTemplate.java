@@ -0,0 +1,69 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.util;
+
+import io.github.redpanda4552.HifumiBot.command.CommandMeta;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+/**
+ * An embed built once, ahead of time, which only needs the footer naming
+ * whoever invoked it filled in per use.
+ */
+public class EmbedTemplate {
+
+    // Null if the template has nothing but a footer
+    private final MessageEmbed embed;
+    
+    /**
+     * @param eb - Everything but the footer. Any footer set here is replaced
+     * when rendering.
+     */
+    public EmbedTemplate(EmbedBuilder eb) {
+        this.embed = eb.isEmpty() ? null : eb.build();
+    }
+    
+    /**
+     * Render the template, footed for the invoker of a command.
+     */
+    public MessageEmbed render(CommandMeta cm) {
+        return toBuilder(cm).build();
+    }
+    
+    /**
+     * Copy the template into a builder footed for the invoker of a command,
+     * for when a few parts need to be filled in per use.
+     */
+    public EmbedBuilder toBuilder(CommandMeta cm) {
+        EmbedBuilder eb = embed != null ? new EmbedBuilder(embed) : new EmbedBuilder();
+        
+        if (cm.getMember() != null) {
+            EmbedUtil.setFooter(eb, cm.getMember());
+        } else {
+            EmbedUtil.setFooter(eb, cm.getUser());
+        }
+        
+        return eb;
+    }
+}
@@ -23,6 +23,9 @@
  */
 package io.github.redpanda4552.HifumiBot.util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import io.github.redpanda4552.HifumiBot.HifumiBot;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Member;
@@ -30,20 +33,76 @@ import net.dv8tion.jda.api.entities.User;
 
 public class EmbedUtil {
 
+    private static final int FOOTER_CACHE_SIZE = 256;
+    
+    private static class Footer {
+
+        private final String displayName;
+        private final String text;
+        
+        private Footer(String displayName, String text) {
+            this.displayName = displayName;
+            this.text = text;
+        }
+    }
+    
+    // Footer text by user ID, least recently used evicted first
+    private static final Map<Long, Footer> footers = new LinkedHashMap<Long, Footer>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Footer> eldest) {
+            return size() > FOOTER_CACHE_SIZE;
+        }
+    };
+    
     public static EmbedBuilder newFootedEmbedBuilderForFilters() {
         return newFootedEmbedBuilder(null, HifumiBot.getSelf().getJDA().getSelfUser().getAvatarUrl());
     }
     
     public static EmbedBuilder newFootedEmbedBuilder(Member sender) {
-        return newFootedEmbedBuilder(sender.getEffectiveName(), sender.getUser().getEffectiveAvatarUrl());
+        return setFooter(new EmbedBuilder(), sender);
     }
     
     public static EmbedBuilder newFootedEmbedBuilder(User sender) {
-        return newFootedEmbedBuilder(sender.getName(), sender.getEffectiveAvatarUrl());
+        return setFooter(new EmbedBuilder(), sender);
+    }
+    
+    public static EmbedBuilder setFooter(EmbedBuilder eb, Member sender) {
+        return eb.setFooter(getFooterText(sender.getIdLong(), sender.getEffectiveName()), sender.getUser().getEffectiveAvatarUrl());
+    }
+    
+    public static EmbedBuilder setFooter(EmbedBuilder eb, User sender) {
+        return eb.setFooter(getFooterText(sender.getIdLong(), sender.getName()), sender.getEffectiveAvatarUrl());
     }
     
     private static EmbedBuilder newFootedEmbedBuilder(String displayName, String avatarUrl) {
         EmbedBuilder eb = new EmbedBuilder();
+        return eb.setFooter(buildFooterText(displayName), avatarUrl);
+    }
+    
+    /**
+     * Get the footer text for a user, from the cache if their display name
+     * has not changed since it was last built.
+     */
+    private static String getFooterText(long userId, String displayName) {
+        synchronized (footers) {
+            Footer footer = footers.get(userId);
+            
+            if (footer != null && footer.displayName.equals(displayName))
+                return footer.text;
+        }
+        
+        Footer footer = new Footer(displayName, buildFooterText(displayName));
+        
+        synchronized (footers) {
+            footers.put(userId, footer);
+        }
+        
+        return footer.text;
+    }
+    
+    private static String buildFooterText(String displayName) {
         StringBuilder sb = new StringBuilder("This message was automatically generated by HifumiBot");
         
         if (displayName != null) {
@@ -52,6 +111,6 @@ public class EmbedUtil {
         }
         
         sb.append(".");
-        return eb.setFooter(sb.toString(), avatarUrl);
+        return sb.toString();
     }
 }
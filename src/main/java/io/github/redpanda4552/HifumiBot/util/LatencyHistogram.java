@@ -0,0 +1,151 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, log-linear latency histogram in the style of HdrHistogram.
+ * Values are recorded in microseconds. Each power of two range is split into
+ * {@value #SUB_BUCKETS} linear buckets, so any value is reported to within
+ * about 3% of what was actually recorded. Recording is a couple of atomic
+ * increments and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values past 2^36 microseconds (about 19 hours) land in the last bucket
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private AtomicLong count = new AtomicLong();
+    private AtomicLong max = new AtomicLong();
+    
+    /**
+     * Record one value.
+     * @param nanos - The latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+        counts.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        
+        long current;
+        
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros));
+    }
+    
+    /**
+     * Add every value recorded in another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            
+            if (c != 0)
+                counts.addAndGet(i, c);
+        }
+        
+        count.addAndGet(other.count.get());
+        
+        long otherMax = other.max.get(), current;
+        
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax));
+    }
+    
+    /**
+     * Forget everything recorded so far. Values recorded while this runs
+     * may be partially lost, which is fine for statistics.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        
+        count.set(0);
+        max.set(0);
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return The largest value recorded, in microseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * @param percentile - Between 0 and 100
+     * @return The value at the percentile, in microseconds, or 0 if nothing
+     * has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        
+        if (total == 0)
+            return 0;
+        
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            
+            if (seen >= target)
+                return Math.min(highestValueIn(i), max.get());
+        }
+        
+        return max.get();
+    }
+    
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    private static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -53,6 +53,6 @@ public class Messaging {
             eb.addField("Caused By Stack Trace", StringUtils.abbreviate(sb.toString(), 1024), false);
         }
         
-        HifumiBot.getSelf().sendMessage(HifumiBot.getSelf().getConfig().systemOutputChannelId, eb.build());
+        HifumiBot.getSelf().sendMessageAsync(HifumiBot.getSelf().getConfig().systemOutputChannelId, eb.build());
     }
 }
@@ -0,0 +1,90 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link LatencyHistogram} covering everything since startup, alongside a
+ * ring of smaller histograms covering only the most recent window of time.
+ * The window advances one slice at a time; the oldest slice is wiped and
+ * reused as time moves on, so the window is accurate to within one slice.
+ */
+public class SlidingHistogram {
+
+    private LatencyHistogram total = new LatencyHistogram();
+    private LatencyHistogram[] slices;
+    private AtomicLongArray sliceEpochs;
+    private long sliceNanos;
+    
+    /**
+     * @param windowSeconds - Length of the recent window
+     * @param sliceCount - Number of slices the window is divided into
+     */
+    public SlidingHistogram(long windowSeconds, int sliceCount) {
+        this.slices = new LatencyHistogram[sliceCount];
+        this.sliceEpochs = new AtomicLongArray(sliceCount);
+        this.sliceNanos = Math.max(1, TimeUnit.SECONDS.toNanos(windowSeconds) / sliceCount);
+        
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new LatencyHistogram();
+            sliceEpochs.set(i, Long.MIN_VALUE);
+        }
+    }
+    
+    public void record(long nanos) {
+        total.record(nanos);
+        long epoch = System.nanoTime() / sliceNanos;
+        int i = (int) Math.floorMod(epoch, (long) slices.length);
+        long sliceEpoch = sliceEpochs.get(i);
+        
+        if (sliceEpoch != epoch && sliceEpochs.compareAndSet(i, sliceEpoch, epoch))
+            slices[i].reset();
+        
+        slices[i].record(nanos);
+    }
+    
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+    
+    /**
+     * @return A new histogram holding only what was recorded within the
+     * window.
+     */
+    public LatencyHistogram getWindow() {
+        LatencyHistogram window = new LatencyHistogram();
+        long epoch = System.nanoTime() / sliceNanos;
+        
+        for (int i = 0; i < slices.length; i++) {
+            long age = epoch - sliceEpochs.get(i);
+            
+            if (age >= 0 && age < slices.length)
+                window.add(slices[i]);
+        }
+        
+        return window;
+    }
+}
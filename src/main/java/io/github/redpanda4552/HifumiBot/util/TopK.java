@@ -0,0 +1,120 @@
+/**
+ * This file is part of HifumiBot, licensed under the MIT License (MIT)
+ * 
+ * Copyright (c) 2020 RedPanda4552 (https://github.com/RedPanda4552)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.github.redpanda4552.HifumiBot.util;
+
+/**
+ * Picks the K highest scoring ids out of any number offered, in one pass.
+ * The best K so far are kept in a fixed size heap with the worst of them on
+ * top, so each offer is at most a comparison and a log K sift. Equal scores
+ * are broken by id, lower first, so the result does not depend on the order
+ * ids are offered in.
+ */
+public class TopK {
+
+    private final float[] scores;
+    private final int[] ids;
+    private int size;
+    
+    public TopK(int k) {
+        scores = new float[k];
+        ids = new int[k];
+    }
+    
+    public void offer(int id, float score) {
+        if (size < ids.length) {
+            int i = size++;
+            
+            // Sift up
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                
+                if (!worse(score, id, scores[parent], ids[parent]))
+                    break;
+                
+                scores[i] = scores[parent];
+                ids[i] = ids[parent];
+                i = parent;
+            }
+            
+            scores[i] = score;
+            ids[i] = id;
+        } else if (size > 0 && worse(scores[0], ids[0], score, id)) {
+            siftDown(score, id);
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Take the ids kept so far, leaving this empty.
+     * @return The ids, best first.
+     */
+    public int[] drain() {
+        int[] ret = new int[size];
+        
+        // The top is always the worst left, so fill from the back
+        while (size > 0) {
+            ret[size - 1] = ids[0];
+            size--;
+            
+            if (size > 0)
+                siftDown(scores[size], ids[size]);
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * Put an entry on top of the heap and sift it down to its place.
+     */
+    private void siftDown(float score, int id) {
+        int i = 0;
+        
+        while (true) {
+            int child = (i << 1) + 1;
+            
+            if (child >= size)
+                break;
+            
+            if (child + 1 < size && worse(scores[child + 1], ids[child + 1], scores[child], ids[child]))
+                child++;
+            
+            if (!worse(scores[child], ids[child], score, id))
+                break;
+            
+            scores[i] = scores[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        
+        scores[i] = score;
+        ids[i] = id;
+    }
+    
+    private static boolean worse(float score, int id, float otherScore, int otherId) {
+        return score < otherScore || (score == otherScore && id > otherId);
+    }
+}
@@ -24,8 +24,10 @@
 package io.github.redpanda4552.HifumiBot.wiki;
 
 import java.io.IOException;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -34,12 +36,34 @@ import org.jsoup.select.Elements;
 
 import io.github.redpanda4552.HifumiBot.util.Messaging;
 import io.github.redpanda4552.HifumiBot.util.Refreshable;
+import io.github.redpanda4552.HifumiBot.util.SingleFlight;
 
+/**
+ * Game titles on the PCSX2 wiki and their page URLs. Each refresh builds a
+ * new {@link Snapshot} and publishes it in one step, so searches never lock
+ * and never see a partial list. If a scrape fails the previous snapshot is
+ * kept.
+ */
 public class WikiIndex implements Refreshable {
 
     private static final String FULL_GAMES_URL = "https://wiki.pcsx2.net/Complete_List_of_Games";
     
-    private ConcurrentHashMap<String, String> fullGamesMap = new ConcurrentHashMap<String, String>();
+    private static class Snapshot {
+
+        // Sorted, so that searches rank equal matches the same way every time
+        private final List<String> titles;
+        private final HashMap<String, String> wikiPageUrls;
+        
+        private Snapshot(HashMap<String, String> wikiPageUrls) {
+            String[] titles = wikiPageUrls.keySet().toArray(new String[wikiPageUrls.size()]);
+            Arrays.sort(titles);
+            this.titles = Collections.unmodifiableList(Arrays.asList(titles));
+            this.wikiPageUrls = wikiPageUrls;
+        }
+    }
+    
+    private volatile Snapshot snapshot = new Snapshot(new HashMap<String, String>());
+    private SingleFlight<String, WikiPage> pageFetches = new SingleFlight<String, WikiPage>();
     
     public WikiIndex() {
         this.refresh();
@@ -48,34 +72,55 @@ public class WikiIndex implements Refreshable {
     @Override
     public synchronized void refresh() {
         try {
-            // Attempt to retrieve the games list, if successful, wipe the
-            // current map and repopulate it.
+            // Attempt to retrieve the games list, if successful, replace the
+            // current snapshot with it.
             Document doc = Jsoup.connect(FULL_GAMES_URL).maxBodySize(0).get();
-            Elements anchors = doc.getElementsByClass("wikitable").first().getElementsByTag("a");
-                    
-            this.clear();
+            Element table = doc.getElementsByClass("wikitable").first();
+            
+            if (table == null)
+                throw new IOException("No games table found at " + FULL_GAMES_URL);
+            
+            Elements anchors = table.getElementsByTag("a");
+            HashMap<String, String> wikiPageUrls = new HashMap<String, String>();
             
             for (Element anchor : anchors) {
-                this.addGame(anchor.attr("title"), WikiPage.BASE_URL + anchor.attr("href"));
+                wikiPageUrls.put(anchor.attr("title"), WikiPage.BASE_URL + anchor.attr("href"));
             }
+            
+            if (wikiPageUrls.isEmpty())
+                throw new IOException("No games found at " + FULL_GAMES_URL);
+            
+            snapshot = new Snapshot(wikiPageUrls);
         } catch (IOException e) {
             Messaging.sendErrorToSystemOutputChannel("WikiIndex", "refresh", e);
         }
     }
     
-    public synchronized void clear() {
-        fullGamesMap.clear();
-    }
-    
-    public synchronized void addGame(String title, String wikiPageUrl) {
-        fullGamesMap.put(title, wikiPageUrl);
+    /**
+     * @return Every title, sorted. The list does not change after it is
+     * returned; a refresh replaces it instead.
+     */
+    public List<String> getAllTitles() {
+        return snapshot.titles;
     }
     
-    public synchronized Set<String> getAllTitles() {
-        return fullGamesMap.keySet();
+    public String getWikiPageUrl(String title) {
+        return snapshot.wikiPageUrls.get(title);
     }
     
-    public synchronized String getWikiPageUrl(String title) {
-        return fullGamesMap.get(title);
+    /**
+     * Fetch and parse the wiki page for a title. If the same page is already
+     * being fetched, wait for that fetch instead of making another request.
+     * @return The page, or null if the title is no longer in the index,
+     * which happens when a refresh lands between a search and its result
+     * being picked.
+     */
+    public WikiPage fetchPage(String title) {
+        String url = getWikiPageUrl(title);
+        
+        if (url == null)
+            return null;
+        
+        return pageFetches.run(url, () -> new WikiPage(url));
     }
 }